@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.oddcyb.microbots.Robots;
+import org.oddcyb.microbots.core.dispatch.BridgeDispatcher;
+import org.oddcyb.microbots.core.dispatch.BridgeReceiver;
+import org.oddcyb.microbots.core.dispatch.Dispatchers;
+import org.oddcyb.microbots.core.event.Event;
+
+/**
+ * Example of bridging events between two JVMs on localhost.
+ * <p>
+ * Start the receiver in one JVM, then the sender in another with the same
+ * port and count. The receiver exits once it has received every event, and
+ * fails if it has not received them all within a minute.
+ */
+public class EventBridge 
+{
+    
+    /**
+     * Display the usage message for this class.
+     */
+    public static void usage()
+    {
+        System.out.println("usage: EventBridge receive|send <port> <count>");
+    }
+    
+    public static void main(String[] args) throws Exception
+    {
+        if ( args.length != 3 )
+        {
+            usage();
+            System.exit(1);
+        }
+
+        var address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                            Integer.parseInt(args[1]));
+        int count = Integer.parseInt(args[2]);
+
+        if ( "receive".equals(args[0]) )
+        {
+            receive(address, count);
+        }
+        else if ( "send".equals(args[0]) )
+        {
+            send(address, count);
+        }
+        else
+        {
+            usage();
+            System.exit(1);
+        }
+    }
+
+    private static void receive(InetSocketAddress address, int count)
+        throws Exception
+    {
+        // Count the bridged events with a reactor in this JVM
+        var received = new CountDownLatch(count);
+        Robots.newReactor("bridge.count", (Integer i) -> received.countDown());
+
+        var receiver = new BridgeReceiver(address);
+        System.out.println("Receiving on "+receiver.getAddress());
+
+        var all = received.await(1, TimeUnit.MINUTES);
+        receiver.shutdown();
+
+        System.out.println("Received "+(count-received.getCount())+
+                           " of "+count+" events");
+        System.exit(all ? 0 : 2);
+    }
+
+    private static void send(InetSocketAddress address, int count)
+        throws Exception
+    {
+        // Forward the bridge events to the receiver, and nothing else
+        var bridge = new BridgeDispatcher(address, 
+            (id) -> id.startsWith("bridge."), Dispatchers.EVENT.dispatcher());
+
+        for ( int i=0 ; i<count ; i++ )
+        {
+            bridge.dispatch(new Event<>("bridge.count", i));
+
+            // Wait for space rather than drop events when sending quickly
+            while ( bridge.getDepth() > 60_000 )
+            {
+                Thread.sleep(1);
+            }
+        }
+
+        bridge.shutdown();
+        bridge.awaitTermination(Duration.ofSeconds(30));
+
+        System.out.println("Sent "+count+" events, dropped "+
+                           bridge.getDropped());
+        System.exit(bridge.getDropped() == 0 ? 0 : 2);
+    }
+    
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.oddcyb.microbots.core.AsyncActiveRobot;
+import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Subscription;
+
+/**
+ * Benchmarks activating robots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotFactoryBenchmark
+{
+    private static final Robot NOOP = () -> {};
+    private static final Executor CALLER = Runnable::run;
+    private static final String WATCH_ID = "bench.watcher";
+
+    private RobotFactory factory;
+    private Subscription reactor;
+    private long watched;
+
+    @Setup
+    public void setup()
+    {
+        this.factory = new RobotFactory();
+        this.reactor = 
+            EventRegistry.register(WATCH_ID, (o) -> this.watched++);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.reactor.unregister();
+        this.factory.shutdown();
+    }
+
+    /**
+     * Activate a robot with the factory and wait for it to complete.
+     * 
+     * @return the activity
+     */
+    @Benchmark
+    public Object activate()
+    {
+        return this.factory.activate(NOOP).activity().join();
+    }
+
+    /**
+     * Create an AsyncActiveRobot that runs on the calling thread.
+     * 
+     * @return the active robot
+     */
+    @Benchmark
+    public ActiveRobot asyncActiveRobot()
+    {
+        return new AsyncActiveRobot(NOOP, CALLER);
+    }
+
+    /**
+     * Create a watcher and wait for its event to reach the reactor.
+     * 
+     * @return the activity
+     */
+    @Benchmark
+    public Object newWatcher()
+    {
+        return this.factory.newWatcher(WATCH_ID, () -> "watched")
+                           .activity()
+                           .join();
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.core.dispatch.Dispatchers;
+import org.oddcyb.microbots.core.dispatch.RecyclingDispatcher;
+
+/**
+ * Benchmarks sending info to a reactor by id through the EventRegistry, with
+ * a new Event for each send and with a pooled Event from the recycling 
+ * dispatcher. The GC profiler should report ~0 B/op for the pooled send.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventPoolBenchmark
+{
+    private static final String ID = "bench.pool";
+
+    private final Object info = new Object();
+    private RecyclingDispatcher recycling;
+    private Subscription subscription;
+    private long performed;
+
+    @Setup
+    public void setup()
+    {
+        this.recycling = 
+            (RecyclingDispatcher) Dispatchers.RECYCLING.dispatcher();
+
+        Action<Object> action = (o) -> this.performed++;
+        this.subscription = EventRegistry.register(ID, action);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.subscription.unregister();
+    }
+
+    /**
+     * Send a new Event through the registry.
+     */
+    @Benchmark
+    public void newEvent()
+    {
+        EventRegistry.send(new Event<>(ID, this.info));
+    }
+
+    /**
+     * Send a pooled Event through the registry.
+     */
+    @Benchmark
+    public void pooledEvent()
+    {
+        this.recycling.dispatch(ID, this.info);
+    }
+
+}
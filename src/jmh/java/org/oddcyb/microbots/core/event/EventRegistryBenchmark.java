@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.oddcyb.microbots.Action;
+
+/**
+ * Benchmarks registering reactors while other threads do the same.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EventRegistryBenchmark
+{
+    private static final AtomicInteger TRIALS = new AtomicInteger(0);
+
+    private final Action<Object> action = (o) -> {};
+    private String id;
+
+    @Setup
+    public void setup()
+    {
+        this.id = "bench.register."+TRIALS.incrementAndGet();
+    }
+
+    /**
+     * Register and unregister an action on a topic shared by all threads.
+     * 
+     * @return the subscription
+     */
+    @Benchmark
+    public Subscription registerSharedTopic()
+    {
+        var subscription = EventRegistry.register(this.id, this.action);
+        subscription.unregister();
+        return subscription;
+    }
+
+    /**
+     * Look up the topic for an id.
+     * 
+     * @return the topic
+     */
+    @Benchmark
+    public Topic<Object> topicLookup()
+    {
+        return EventRegistry.topic(this.id);
+    }
+
+}
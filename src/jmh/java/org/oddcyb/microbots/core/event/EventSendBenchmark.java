@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.core.dispatch.Dispatchers;
+
+/**
+ * Benchmarks sending an event to a number of reactors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSendBenchmark
+{
+    private static final AtomicInteger TRIALS = new AtomicInteger(0);
+
+    @Param({ "1", "10", "1000" })
+    public int fanout;
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final Object info = new Object();
+    private String id;
+    private Topic<Object> topic;
+    private long performed;
+
+    @Setup
+    public void setup()
+    {
+        this.id = "bench.send."+TRIALS.incrementAndGet();
+        this.topic = EventRegistry.topic(this.id);
+
+        Action<Object> action = (o) -> this.performed++;
+        for ( int i=0 ; i<this.fanout ; i++ )
+        {
+            this.subscriptions.add(EventRegistry.register(this.id, action));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        this.subscriptions.forEach(Subscription::unregister);
+        this.subscriptions.clear();
+    }
+
+    /**
+     * Send a new Event through the main event dispatcher.
+     */
+    @Benchmark
+    public void eventSend()
+    {
+        new Event<>(this.id, this.info).send();
+    }
+
+    /**
+     * Send a new Event through a dispatcher obtained from Dispatchers.EVENT.
+     */
+    @Benchmark
+    public void eventDispatch()
+    {
+        Dispatchers.EVENT.dispatcher()
+                         .dispatch(new Event<>(this.id, this.info));
+    }
+
+    /**
+     * Send info through a resolved Topic.
+     */
+    @Benchmark
+    public void topicSend()
+    {
+        this.topic.send(this.info);
+    }
+
+}
@@ -29,6 +29,6 @@ public interface ActiveRobot
      * 
      * @return CompletableFuture representing the robots activity.
      */
-    public CompletableFuture activity();
+    public CompletableFuture<?> activity();
     
 }
@@ -15,33 +15,91 @@
  */
 package org.oddcyb.microbots;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import org.oddcyb.microbots.core.ActiveReactor;
 import org.oddcyb.microbots.core.AsyncActiveRobot;
-import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.BatchingAction;
+import org.oddcyb.microbots.core.ChangeDetector;
+import org.oddcyb.microbots.core.CircuitBreaker;
+import org.oddcyb.microbots.core.PeriodicWatcher;
+import org.oddcyb.microbots.core.RetryPolicy;
+import org.oddcyb.microbots.core.RetryingActiveRobot;
+import org.oddcyb.microbots.core.RobotGroup;
+import org.oddcyb.microbots.core.dispatch.Dispatcher;
+import org.oddcyb.microbots.core.dispatch.DispatcherFactory;
+import org.oddcyb.microbots.core.dispatch.Dispatchers;
 import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Overflow;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.util.HashedWheelTimer;
 import org.oddcyb.microbots.core.util.RobotThreadFactory;
+import org.oddcyb.microbots.core.util.VirtualThreads;
 
 /**
  * Factory that can activate robots.
  */
 public class RobotFactory
 {
+    private static final AtomicInteger FACTORY_COUNT = new AtomicInteger(0);
+
+    private final String name;
     private final ExecutorService executor;
+    private final Dispatcher dispatcher;
+    private final ConcurrentMap<String,ChangeDetector<Object>> detectors;
     
     public RobotFactory()
     {
-        this.executor = 
-            Executors.newCachedThreadPool(new RobotThreadFactory());
+        this(Executors.newCachedThreadPool(new RobotThreadFactory()));
     }
 
     public RobotFactory(ExecutorService executors)
     {
+        this(executors, Dispatchers.EVENT);
+    }
+
+    /**
+     * Create a RobotFactory.
+     * 
+     * @param executors the executor to activate robots with
+     * @param dispatchers the factory of the dispatcher that watchers send
+     * events with, e.g. {@link Dispatchers#ASYNC} to stop watchers waiting 
+     * on reactors
+     */
+    public RobotFactory(ExecutorService executors, 
+                        DispatcherFactory dispatchers)
+    {
+        this.name = "RobotFactory-"+FACTORY_COUNT.incrementAndGet();
         this.executor = executors;
+        this.dispatcher = dispatchers.dispatcher();
+        this.detectors = new ConcurrentHashMap<>();
+
+        if ( Metrics.ENABLED )
+        {
+            Metrics.executor(this.name, this.executor);
+        }
+    }
+
+    /**
+     * Create a RobotFactory that activates each robot on its own virtual 
+     * thread, so blocked robots do not hold a platform thread.
+     * Platform threads are used if the JVM does not provide virtual threads.
+     * 
+     * @return the RobotFactory
+     */
+    public static RobotFactory newVirtualThreadFactory()
+    {
+        return new RobotFactory(VirtualThreads.newRobotExecutor());
     }
 
     /**
@@ -55,6 +113,58 @@ public class RobotFactory
         return new AsyncActiveRobot(robot, this.executor);
     }
     
+    /**
+     * Activate a robot with a timeout.
+     * If the robot is still active after the timeout, its activity completes
+     * with a TimeoutException and the robot is interrupted. Cancelling the
+     * activity also interrupts the robot.
+     * 
+     * @param robot the robot to activate
+     * @param timeout the maximum time the robot can be active
+     * @return the activated robot
+     */
+    public ActiveRobot activate(Robot robot, Duration timeout)
+    {
+        return new AsyncActiveRobot(robot, this.executor, timeout);
+    }
+    
+    /**
+     * Activate a robot that depends on a target, retrying it when it fails.
+     * Retries are delayed by a jittered exponential backoff, and the shared
+     * circuit breaker for the target stops attempts while the target is
+     * failing. The activity completes with the robot's last failure if it 
+     * cannot be retried.
+     * 
+     * @param robot the robot to activate
+     * @param target the name of the target the robot depends on, e.g. a host
+     * @param policy the policy for retrying the robot, e.g. 
+     * {@link RetryPolicy#DEFAULT}
+     * @return the activated robot
+     * @see CircuitBreaker#forTarget(String)
+     */
+    public ActiveRobot activate(Robot robot, String target, 
+                                RetryPolicy policy)
+    {
+        return new RetryingActiveRobot(robot, this.executor, policy, 
+                                       CircuitBreaker.forTarget(target),
+                                       HashedWheelTimer.shared());
+    }
+    
+    /**
+     * Activate a group of robots, at most parallelism at a time.
+     * 
+     * @param <R> the type of robot in the group
+     * @param robots the robots to activate
+     * @param parallelism the maximum number of robots active at once
+     * @param mode when the group's activity completes
+     * @return the activated group, whose activity gives the robots' results
+     */
+    public <R extends Robot> RobotGroup<R> newGroup(
+        Collection<? extends R> robots, int parallelism, RobotGroup.Mode mode)
+    {
+        return new RobotGroup<>(robots, parallelism, mode, this.executor);
+    }
+    
     /**
      * Create a new active watcher robot.
      * The robot will wait for information supplied by the provided service.
@@ -66,7 +176,9 @@ public class RobotFactory
      */
     public <T> ActiveRobot newWatcher(String id, Supplier<T> service)
     {
-        return activate( () -> new Event<>(id, service.get()).send() );
+        Topic<T> topic = EventRegistry.topic(id);
+        return activate( 
+            () -> this.dispatcher.dispatch(topic, service.get()) );
     }
     
     /**
@@ -82,26 +194,169 @@ public class RobotFactory
     public <T> ActiveRobot newWatcher(String id, 
                                       Consumer<Consumer<T>> onService)
     {
+        Topic<T> topic = EventRegistry.topic(id);
         return activate( () -> {
             onService.accept( (t) -> {
-                new Event<>(id, t).send() ;
+                this.dispatcher.dispatch(topic, t);
             }); 
         });
     }
     
+    /**
+     * Create a new active watcher robot that only sends changed info.
+     * Info equal to the last info sent to the id by this method is not 
+     * dispatched, so repeated watchers for an id only send changes.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public <T> ActiveRobot newDistinctWatcher(String id, Supplier<T> service)
+    {
+        return newDistinctWatcher(id, 
+            this.detectors.computeIfAbsent(id, i -> new ChangeDetector<>()),
+            service);
+    }
+    
+    /**
+     * Create a new active watcher robot that only sends info passed by a
+     * change detector.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param detector the detector that decides if info has changed
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public <T> ActiveRobot newDistinctWatcher(String id, 
+                                              ChangeDetector<? super T> detector,
+                                              Supplier<T> service)
+    {
+        Topic<T> topic = EventRegistry.topic(id);
+        return activate( () -> {
+            detector.ifChanged(service.get(), 
+                info -> this.dispatcher.dispatch(topic, info));
+        });
+    }
+    
+    /**
+     * Create a new periodic watcher robot.
+     * The service is polled at a fixed rate and its info sent to the id.
+     * All periodic watchers share one timer thread. The watcher runs until
+     * its activity is cancelled.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public <T> ActiveRobot newPeriodicWatcher(String id, Duration interval,
+                                              Supplier<T> service)
+    {
+        return newPeriodicWatcher(id, interval, Duration.ZERO, service);
+    }
+    
+    /**
+     * Create a new periodic watcher robot with jitter.
+     * Each poll is delayed by a random time up to the jitter, so watchers 
+     * with the same interval do not all poll at once.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public <T> ActiveRobot newPeriodicWatcher(String id, Duration interval,
+                                              Duration jitter,
+                                              Supplier<T> service)
+    {
+        return new PeriodicWatcher<>(EventRegistry.topic(id), service, 
+                                     interval, jitter, this.dispatcher,
+                                     this.executor, HashedWheelTimer.shared());
+    }
+    
+    /**
+     * Create a new periodic watcher robot that only sends info passed by a
+     * change detector, so unchanged polls do not dispatch an event.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param detector the detector that decides if info has changed
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public <T> ActiveRobot newDistinctPeriodicWatcher(
+        String id, Duration interval, Duration jitter,
+        ChangeDetector<? super T> detector, Supplier<T> service)
+    {
+        return new PeriodicWatcher<>(EventRegistry.topic(id), service, 
+                                     detector, interval, jitter, 
+                                     this.dispatcher, this.executor, 
+                                     HashedWheelTimer.shared());
+    }
+    
     /**
      * Create a new active reactor robot.
      * This method will not block. The provided action will be performed when
      * an event is triggered with the provided "on" object.
      * 
      * @param <T> the type of the info to on on
-     * @param id to act on
+     * @param id to act on, or a wildcard pattern of ids
+     * @param action the action to take
+     * @return ActiveReactor waiting to on, whose subscription unregisters it
+     */
+    public <T> ActiveReactor newReactor(String id, Action<T> action)
+    {
+        return new ActiveReactor(EventRegistry.register(id, action));
+    }
+    
+    /**
+     * Create a new active reactor robot with a bounded mailbox.
+     * Events dispatched asynchronously wait in the mailbox until the action 
+     * can be performed, and the overflow policy decides what happens when 
+     * the mailbox is full.
+     * 
+     * @param <T> the type of the info to act on
+     * @param id to act on, or a wildcard pattern of ids
      * @param action the action to take
-     * @return ActiveRobot waiting to on
+     * @param capacity the maximum number of events waiting in the mailbox
+     * @param overflow what to do when the mailbox is full
+     * @return ActiveReactor waiting to act, whose subscription observes the
+     * mailbox and unregisters it
      */
-    public <T> ActiveRobot newReactor(String id, Action<T> action)
+    public <T> ActiveReactor newReactor(String id, Action<T> action, 
+                                        int capacity, Overflow overflow)
     {
-        return activate( () -> { EventRegistry.register(id, action); } );
+        return new ActiveReactor(
+            EventRegistry.register(id, action, capacity, overflow));
+    }
+    
+    /**
+     * Create a new active batch reactor robot.
+     * This method will not block. Events are collected into a batch and the
+     * provided action is performed when the batch holds maxSize events or
+     * maxDelay has passed since the first event in the batch.
+     * 
+     * @param <T> the type of the info to act on
+     * @param id to act on, or a wildcard pattern of ids
+     * @param maxSize the maximum number of events in a batch
+     * @param maxDelay the maximum time an event waits in a batch
+     * @param action the action to take on each batch
+     * @return ActiveReactor waiting to act
+     */
+    public <T> ActiveReactor newBatchReactor(String id, int maxSize, 
+                                           Duration maxDelay, 
+                                           BatchAction<T> action)
+    {
+        return newReactor(id, new BatchingAction<>(action, maxSize, maxDelay, 
+                                                   HashedWheelTimer.shared(),
+                                                   this.executor));
     }
     
     /**
@@ -111,6 +366,11 @@ public class RobotFactory
     public void shutdown()
     {
         this.executor.shutdown();
+
+        if ( Metrics.ENABLED )
+        {
+            Metrics.removeExecutor(this.name);
+        }
         
         try
         {
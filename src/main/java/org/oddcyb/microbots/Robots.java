@@ -15,18 +15,34 @@
  */
 package org.oddcyb.microbots;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import org.oddcyb.microbots.core.ActiveReactor;
+import org.oddcyb.microbots.core.ChangeDetector;
+import org.oddcyb.microbots.core.RetryPolicy;
+import org.oddcyb.microbots.core.RobotGroup;
+import org.oddcyb.microbots.core.event.Overflow;
+
 /**
  * Factory and utility methods for the Microbots framework.
  */
 public class Robots
 {
 
+    /**
+     * System property that makes the default factory use virtual threads.
+     */
+    public static final String VIRTUAL_THREADS_PROP = 
+        "microbots.virtual-threads";
+
     private static final AtomicReference<RobotFactory> DEFAULT_FACTORY_REF =
-        new AtomicReference<>(new RobotFactory());
+        new AtomicReference<>(
+            Boolean.getBoolean(VIRTUAL_THREADS_PROP) ?
+                RobotFactory.newVirtualThreadFactory() : new RobotFactory());
 
     /**
      * 
@@ -41,6 +57,47 @@ public class Robots
         return factory().activate(robot);
     }
 
+    /**
+     * Activate a robot with a timeout.
+     * 
+     * @param robot the robot to activate
+     * @param timeout the maximum time the robot can be active
+     * @return the activated robot
+     */
+    public static ActiveRobot activate(Robot robot, Duration timeout)
+    {
+        return factory().activate(robot, timeout);
+    }
+
+    /**
+     * Activate a robot that depends on a target, retrying it when it fails.
+     * 
+     * @param robot the robot to activate
+     * @param target the name of the target the robot depends on, e.g. a host
+     * @param policy the policy for retrying the robot
+     * @return the activated robot
+     */
+    public static ActiveRobot activate(Robot robot, String target, 
+                                       RetryPolicy policy)
+    {
+        return factory().activate(robot, target, policy);
+    }
+
+    /**
+     * Activate a group of robots, at most parallelism at a time.
+     * 
+     * @param <R> the type of robot in the group
+     * @param robots the robots to activate
+     * @param parallelism the maximum number of robots active at once
+     * @param mode when the group's activity completes
+     * @return the activated group, whose activity gives the robots' results
+     */
+    public static <R extends Robot> RobotGroup<R> newGroup(
+        Collection<? extends R> robots, int parallelism, RobotGroup.Mode mode)
+    {
+        return factory().newGroup(robots, parallelism, mode);
+    }
+
         /**
      * Create a new active watcher robot.
      * The robot will wait for information supplied by the provided service.
@@ -71,19 +128,142 @@ public class Robots
         return factory().newWatcher(id, onService);
     }
     
+    /**
+     * Create a new periodic watcher robot.
+     * The service is polled at a fixed rate until the robot's activity is 
+     * cancelled.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public static <T> ActiveRobot newPeriodicWatcher(String id, 
+                                                     Duration interval,
+                                                     Supplier<T> service)
+    {
+        return factory().newPeriodicWatcher(id, interval, service);
+    }
+    
+    /**
+     * Create a new periodic watcher robot with jitter.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public static <T> ActiveRobot newPeriodicWatcher(String id, 
+                                                     Duration interval,
+                                                     Duration jitter,
+                                                     Supplier<T> service)
+    {
+        return factory().newPeriodicWatcher(id, interval, jitter, service);
+    }
+    
+    /**
+     * Create a new active watcher robot that only sends changed info.
+     * Info equal to the last info sent to the id by this method is not 
+     * dispatched.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public static <T> ActiveRobot newDistinctWatcher(String id, 
+                                                     Supplier<T> service)
+    {
+        return factory().newDistinctWatcher(id, service);
+    }
+    
+    /**
+     * Create a new active watcher robot that only sends info passed by a
+     * change detector.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param detector the detector that decides if info has changed
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public static <T> ActiveRobot newDistinctWatcher(
+        String id, ChangeDetector<? super T> detector, Supplier<T> service)
+    {
+        return factory().newDistinctWatcher(id, detector, service);
+    }
+    
+    /**
+     * Create a new periodic watcher robot that only sends info passed by a
+     * change detector.
+     * 
+     * @param <T> the type of info provided by service
+     * @param id to send watch info to
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param detector the detector that decides if info has changed
+     * @param service the service to watch
+     * @return ActiveRobot watching the supplied service
+     */
+    public static <T> ActiveRobot newDistinctPeriodicWatcher(
+        String id, Duration interval, Duration jitter,
+        ChangeDetector<? super T> detector, Supplier<T> service)
+    {
+        return factory().newDistinctPeriodicWatcher(id, interval, jitter, 
+                                                    detector, service);
+    }
+    
     /**
      * Create a new active reactor robot.
      * This method will not block. The provided action will be performed when
      * an event is triggered with the provided "on" object.
      * 
      * @param <T> the type of the info to on on
-     * @param id to act on
+     * @param id to act on, or a wildcard pattern of ids
      * @param action the action to take
-     * @return ActiveRobot waiting to on
+     * @return ActiveReactor waiting to on, whose subscription unregisters it
      */
-    public static <T> ActiveRobot newReactor(String id, Action<T> action)
+    public static <T> ActiveReactor newReactor(String id, Action<T> action)
     {
         return factory().newReactor(id, action);
     }
     
+    /**
+     * Create a new active reactor robot with a bounded mailbox.
+     * 
+     * @param <T> the type of the info to act on
+     * @param id to act on, or a wildcard pattern of ids
+     * @param action the action to take
+     * @param capacity the maximum number of events waiting in the mailbox
+     * @param overflow what to do when the mailbox is full
+     * @return ActiveReactor waiting to act, whose subscription observes the
+     * mailbox and unregisters it
+     */
+    public static <T> ActiveReactor newReactor(String id, Action<T> action,
+                                               int capacity, 
+                                               Overflow overflow)
+    {
+        return factory().newReactor(id, action, capacity, overflow);
+    }
+    
+    /**
+     * Create a new active batch reactor robot.
+     * 
+     * @param <T> the type of the info to act on
+     * @param id to act on, or a wildcard pattern of ids
+     * @param maxSize the maximum number of events in a batch
+     * @param maxDelay the maximum time an event waits in a batch
+     * @param action the action to take on each batch
+     * @return ActiveReactor waiting to act
+     */
+    public static <T> ActiveReactor newBatchReactor(String id, int maxSize,
+                                                    Duration maxDelay,
+                                                    BatchAction<T> action)
+    {
+        return factory().newBatchReactor(id, maxSize, maxDelay, action);
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.util.concurrent.CompletableFuture;
+import org.oddcyb.microbots.ActiveRobot;
+import org.oddcyb.microbots.core.event.Subscription;
+
+/**
+ * A reactor robot that has been registered.
+ * The reactor's subscription can be used to observe its mailbox and to 
+ * unregister it.
+ */
+public class ActiveReactor implements ActiveRobot
+{
+    private final Subscription subscription;
+    private final CompletableFuture<Subscription> activity;
+    
+    /**
+     * Create an ActiveReactor for a registered action.
+     * 
+     * @param subscription the subscription for the action
+     */
+    public ActiveReactor(Subscription subscription)
+    {
+        this.subscription = subscription;
+        this.activity = CompletableFuture.completedFuture(subscription);
+    }
+    
+    /**
+     * Get the reactor's activity, which is complete once the reactor is 
+     * registered.
+     * 
+     * @return CompletableFuture providing the reactor's subscription
+     */
+    @Override
+    public CompletableFuture<Subscription> activity()
+    {
+        return this.activity;
+    }
+    
+    /**
+     * Get the reactor's subscription.
+     * 
+     * @return the subscription
+     */
+    public Subscription getSubscription()
+    {
+        return this.subscription;
+    }
+    
+}
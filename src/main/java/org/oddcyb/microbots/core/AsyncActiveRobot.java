@@ -15,15 +15,26 @@
  */
 package org.oddcyb.microbots.core;
 
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.oddcyb.microbots.ActiveRobot;
 import org.oddcyb.microbots.Robot;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.metrics.TimerMetrics;
+import org.oddcyb.microbots.core.util.HashedWheelTimer;
 
 /**
  * Activates a Robot asynchronously.
+ * <p>
+ * Cancelling the activity, or the activity timing out, interrupts the thread
+ * activating the robot, so a robot blocked in an interruptible call stops
+ * and frees the thread. A robot that has not started when its activity is
+ * cancelled is not activated.
  */
 public class AsyncActiveRobot implements ActiveRobot
 {
@@ -31,7 +42,9 @@ public class AsyncActiveRobot implements ActiveRobot
         Logger.getLogger(AsyncActiveRobot.class.getName());
     
     private final Robot robot;
-    private final CompletableFuture activity;
+    private final TimerMetrics metrics;
+    private final CompletableFuture<Void> activity;
+    private Thread worker;
     
     /**
      * Create an async ActiveRobot.
@@ -40,32 +53,111 @@ public class AsyncActiveRobot implements ActiveRobot
      * @param executor the executor to do the activity
      */
     public AsyncActiveRobot(Robot robot, Executor executor)
+    {
+        this(robot, executor, null);
+    }
+    
+    /**
+     * Create an async ActiveRobot with a timeout.
+     * If the robot is still active after the timeout, its activity completes
+     * with a TimeoutException and the robot is interrupted.
+     * 
+     * @param robot the robot to activate
+     * @param executor the executor to do the activity
+     * @param timeout the maximum time the robot is active, from when it is 
+     * created, or null for no timeout
+     */
+    public AsyncActiveRobot(Robot robot, Executor executor, Duration timeout)
     {
         this.robot = robot;
+        this.metrics = Metrics.ENABLED ? Metrics.robot(robot) : null;
+        this.activity = new CompletableFuture<>();
+        
+        if ( timeout != null )
+        {
+            var expiry = HashedWheelTimer.shared().schedule(
+                () -> this.activity.completeExceptionally(
+                    new TimeoutException("Robot timed out after "+timeout)),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+            this.activity.whenComplete( (r, e) -> expiry.cancel() );
+        }
         
-        // Create the activity for this robot
-        this.activity = CompletableFuture.runAsync( 
-            () -> { 
-                try
-                {
-                    this.robot.activate();
-                }
-                catch(Exception e)
-                {
-                    LOG.log(Level.WARNING, "Robot failed", e);
-                }
-            },
-            executor);
+        // Stop the robot if its activity is completed before the robot is
+        this.activity.whenComplete( (r, e) -> this.interrupt() );
+        
+        executor.execute(this::activate);
     }
     
     /**
      * Get the robots activity.
+     * Cancelling the activity interrupts the robot.
      * 
      * @return CompletableFuture representing the robots activity.
      */
     @Override
-    public CompletableFuture activity()
+    public CompletableFuture<Void> activity()
     {
         return this.activity;
     }
+    
+    private void activate()
+    {
+        synchronized ( this )
+        {
+            if ( this.activity.isDone() )
+            {
+                return;
+            }
+            this.worker = Thread.currentThread();
+        }
+        
+        var start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try
+        {
+            this.robot.activate();
+        }
+        catch(Exception e)
+        {
+            // Robots that were stopped are expected to fail
+            LOG.log(this.activity.isDone() ? Level.FINE : Level.WARNING, 
+                    "Robot failed", e);
+            if ( Metrics.ENABLED )
+            {
+                this.metrics.failed();
+            }
+        }
+        catch(Throwable t)
+        {
+            LOG.log(Level.SEVERE, "Robot failed", t);
+            if ( Metrics.ENABLED )
+            {
+                this.metrics.failed();
+            }
+            this.activity.completeExceptionally(t);
+        }
+        finally
+        {
+            if ( Metrics.ENABLED )
+            {
+                this.metrics.record(System.nanoTime()-start);
+            }
+            
+            synchronized ( this )
+            {
+                this.worker = null;
+            }
+            // Clear an interrupt that arrived as the robot finished, so it
+            // does not leak into the executor's next task
+            Thread.interrupted();
+            this.activity.complete(null);
+        }
+    }
+    
+    private synchronized void interrupt()
+    {
+        if ( this.worker != null )
+        {
+            this.worker.interrupt();
+        }
+    }
 }
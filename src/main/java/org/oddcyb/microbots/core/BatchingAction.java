@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.BatchAction;
+import org.oddcyb.microbots.core.util.HashedWheelTimer;
+
+/**
+ * An action that collects info into batches for a BatchAction.
+ * A batch is performed when it reaches the maximum size, or when the maximum
+ * delay has passed since its first info was received, whichever is first.
+ * <p>
+ * Batches are performed outside the lock that collects info, so a slow
+ * BatchAction does not block senders. Full batches wait in a queue and are
+ * performed in order, one at a time, by whichever thread finds the action
+ * idle.
+ * 
+ * @param <T> the type of info in a batch
+ */
+public class BatchingAction<T> implements Action<T>
+{
+    private final BatchAction<T> action;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final HashedWheelTimer timer;
+    private final Executor executor;
+    private final Queue<List<T>> full;
+    private final AtomicBoolean performing;
+
+    private List<T> batch;
+    private HashedWheelTimer.Timeout expiry;
+
+    /**
+     * Create a batching action.
+     * 
+     * @param action the action to perform on each batch
+     * @param maxSize the maximum number of info in a batch
+     * @param maxDelay the maximum time to wait before performing a batch
+     * @param timer the timer that expires batches
+     * @param executor the executor to perform expired batches
+     */
+    public BatchingAction(BatchAction<T> action, int maxSize, 
+                          Duration maxDelay, HashedWheelTimer timer,
+                          Executor executor)
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Batch size must be positive: "+maxSize);
+        }
+
+        this.action = action;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.timer = timer;
+        this.executor = executor;
+        this.full = new ConcurrentLinkedQueue<>();
+        this.performing = new AtomicBoolean(false);
+    }
+
+    /**
+     * Add info to the current batch.
+     * If the batch is full it is performed on the calling thread, unless
+     * another thread is performing a batch, which then performs this one.
+     * 
+     * @param info the info to add
+     */
+    @Override
+    public void perform(T info)
+    {
+        synchronized ( this )
+        {
+            if ( this.batch == null )
+            {
+                this.batch = new ArrayList<>(Math.min(this.maxSize, 1024));
+                var expiring = this.batch;
+                this.expiry = this.timer.schedule(
+                    () -> this.executor.execute( () -> this.expire(expiring) ),
+                    this.maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            this.batch.add(info);
+
+            if ( this.batch.size() < this.maxSize )
+            {
+                return;
+            }
+
+            this.expiry.cancel();
+            this.swap();
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Perform the batch if it has not already been performed.
+     * 
+     * @param expiring the batch that has expired
+     */
+    private void expire(List<T> expiring)
+    {
+        synchronized ( this )
+        {
+            if ( this.batch != expiring )
+            {
+                return;
+            }
+            this.swap();
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Queue the current batch to be performed and start a new one.
+     */
+    private void swap()
+    {
+        this.full.add(this.batch);
+        this.batch = null;
+        this.expiry = null;
+    }
+
+    /**
+     * Perform the queued batches, unless another thread is performing them.
+     */
+    private void drain()
+    {
+        // Check again after performing, in case a batch was queued while
+        // another thread was giving up
+        while ( !this.full.isEmpty() && 
+                this.performing.compareAndSet(false, true) )
+        {
+            try
+            {
+                List<T> next;
+                while ( (next = this.full.poll()) != null )
+                {
+                    this.action.perform(next);
+                }
+            }
+            finally
+            {
+                this.performing.set(false);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Passes on info that differs from the last info passed on.
+ * <p>
+ * Info is compared by a key, which is the info itself by default. A key
+ * function can compare info by part of its value or by a hash of it, so
+ * large info does not need to be kept. The last key can be kept in a cache
+ * file, so unchanged info is not passed again after a restart. Cached keys
+ * are compared as strings. Info only becomes the last info once it has been
+ * passed on, so info that fails to be passed on is passed on again.
+ *
+ * @param <T> the type of info tested
+ */
+public class ChangeDetector<T>
+{
+    private static final Logger LOG =
+        Logger.getLogger(ChangeDetector.class.getName());
+
+    private static final Object NONE = new Object();
+
+    private final Function<? super T,?> key;
+    private final Path cache;
+    private Object last;
+
+    /**
+     * Create a change detector that compares info with equals.
+     */
+    public ChangeDetector()
+    {
+        this(Function.identity());
+    }
+
+    /**
+     * Create a change detector that compares the keys of info with equals.
+     *
+     * @param key the function to get the key of info, e.g. a hash
+     */
+    public ChangeDetector(Function<? super T,?> key)
+    {
+        this(key, null);
+    }
+
+    /**
+     * Create a change detector that keeps the last key in a cache file.
+     * The last key is read from the cache file if it exists, and the file is
+     * replaced each time the key changes.
+     *
+     * @param key the function to get the key of info, e.g. a hash
+     * @param cache the cache file, or null to only keep the key in memory
+     */
+    public ChangeDetector(Function<? super T,?> key, Path cache)
+    {
+        this.key = key;
+        this.cache = cache;
+        this.last = (cache == null) ? NONE : load(cache);
+    }
+
+    /**
+     * Pass on info if it differs from the last info passed on.
+     * The info becomes the last info if onChange returns normally. Calls are
+     * serialized, so info is passed on one at a time.
+     *
+     * @param <U> the type of the info
+     * @param info the info to test
+     * @param onChange passes on changed info, e.g. by dispatching it
+     * @return true if the info had changed and was passed on
+     */
+    public synchronized <U extends T> boolean ifChanged(
+        U info, Consumer<? super U> onChange)
+    {
+        Object current = this.key.apply(info);
+        if ( this.cache != null )
+        {
+            current = String.valueOf(current);
+        }
+
+        if ( Objects.equals(this.last, current) )
+        {
+            return false;
+        }
+
+        onChange.accept(info);
+
+        this.last = current;
+        if ( this.cache != null )
+        {
+            store(this.cache, (String) current);
+        }
+        return true;
+    }
+
+    private static Object load(Path cache)
+    {
+        if ( !Files.exists(cache) )
+        {
+            return NONE;
+        }
+
+        try
+        {
+            return Files.readString(cache, StandardCharsets.UTF_8);
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.WARNING, "Unable to read cache "+cache, ioe);
+            return NONE;
+        }
+    }
+
+    private static void store(Path cache, String key)
+    {
+        try
+        {
+            // Replace the cache in one step so a crash cannot leave it empty
+            var tmp = cache.resolveSibling(cache.getFileName()+".tmp");
+            Files.writeString(tmp, key, StandardCharsets.UTF_8);
+            Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.WARNING, "Unable to write cache "+cache, ioe);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A circuit breaker for a target, such as an endpoint, that robots depend on.
+ * <p>
+ * The circuit opens after a number of consecutive failures, and while it is
+ * open attempts on the target are refused without being made. Once the
+ * circuit has been open for a while it is half open, and a single trial
+ * attempt is allowed. The circuit closes if the trial succeeds and opens
+ * again if it fails.
+ */
+public class CircuitBreaker
+{
+    /**
+     * The consecutive failures that open a shared circuit breaker.
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The time a shared circuit breaker stays open.
+     */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private static final ConcurrentMap<String,CircuitBreaker> TARGETS =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State
+    {
+        /**
+         * Attempts are allowed.
+         */
+        CLOSED,
+
+        /**
+         * Attempts are refused.
+         */
+        OPEN,
+
+        /**
+         * A single trial attempt is allowed.
+         */
+        HALF_OPEN;
+    }
+
+    /**
+     * The permission given for an attempt.
+     */
+    public enum Permit
+    {
+        /**
+         * The attempt is refused.
+         */
+        REFUSED,
+
+        /**
+         * The attempt is allowed while the circuit is closed.
+         */
+        ATTEMPT,
+
+        /**
+         * The attempt is the single trial of a half open circuit.
+         */
+        TRIAL;
+
+        /**
+         * Check if the attempt can be made.
+         *
+         * @return true unless the attempt is refused
+         */
+        public boolean isAllowed()
+        {
+            return this != REFUSED;
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private int failures;
+    private boolean open;
+    private boolean trial;
+    private long openedAt;
+
+    /**
+     * Create a circuit breaker.
+     *
+     * @param failureThreshold the consecutive failures that open the circuit
+     * @param openDuration the time the circuit stays open before a trial
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration)
+    {
+        if ( failureThreshold < 1 || openDuration.isNegative() )
+        {
+            throw new IllegalArgumentException(
+                "Invalid failure threshold "+failureThreshold+
+                " or open duration "+openDuration);
+        }
+
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Get the shared circuit breaker for a target, creating it with the
+     * default threshold and open duration if it does not exist.
+     *
+     * @param target the name of the target, e.g. a host name
+     * @return the circuit breaker for the target
+     */
+    public static CircuitBreaker forTarget(String target)
+    {
+        return TARGETS.computeIfAbsent(target, t ->
+            new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD,
+                               DEFAULT_OPEN_DURATION));
+    }
+
+    /**
+     * Get the state of the circuit.
+     *
+     * @return the state
+     */
+    public synchronized State getState()
+    {
+        if ( !this.open )
+        {
+            return State.CLOSED;
+        }
+
+        return (System.nanoTime() - this.openedAt < this.openNanos) ?
+            State.OPEN : State.HALF_OPEN;
+    }
+
+    /**
+     * Check if an attempt is allowed.
+     * If the circuit is half open, only the first caller is allowed and it
+     * must report the result of its attempt. A caller that might not report
+     * its result should use {@link #acquire()} instead.
+     *
+     * @return true if the attempt can be made
+     */
+    public boolean allow()
+    {
+        return this.acquire().isAllowed();
+    }
+
+    /**
+     * Get permission for an attempt.
+     * If the circuit is half open, only the first caller is given the trial
+     * and it must report the result of its attempt, or release its permit.
+     *
+     * @return the permit for the attempt
+     */
+    public synchronized Permit acquire()
+    {
+        if ( !this.open )
+        {
+            return Permit.ATTEMPT;
+        }
+
+        if ( this.trial ||
+             System.nanoTime() - this.openedAt < this.openNanos )
+        {
+            return Permit.REFUSED;
+        }
+
+        this.trial = true;
+        return Permit.TRIAL;
+    }
+
+    /**
+     * Report a successful attempt, which closes the circuit.
+     */
+    public synchronized void success()
+    {
+        this.failures = 0;
+        this.open = false;
+        this.trial = false;
+    }
+
+    /**
+     * Release the permit for an attempt that was not made, or whose result
+     * should not count. Releasing the trial lets a half open circuit allow
+     * another trial, other permits need no release.
+     *
+     * @param permit the permit given for the attempt
+     */
+    public synchronized void release(Permit permit)
+    {
+        if ( permit == Permit.TRIAL )
+        {
+            this.trial = false;
+        }
+    }
+
+    /**
+     * Report a failed attempt.
+     */
+    public synchronized void failure()
+    {
+        this.failures++;
+        if ( this.trial || this.failures >= this.failureThreshold )
+        {
+            this.open = true;
+            this.trial = false;
+            this.openedAt = System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.ActiveRobot;
+import org.oddcyb.microbots.core.dispatch.Dispatcher;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.util.HashedWheelTimer;
+
+/**
+ * A watcher that sends the info from a supplier to a topic at a fixed rate.
+ * <p>
+ * The watcher is scheduled on a HashedWheelTimer and each poll runs on an
+ * executor. A poll is skipped if the previous one is still running. Each 
+ * poll can be delayed by a random jitter, so many watchers with the same 
+ * interval do not all poll at once. A ChangeDetector can stop unchanged
+ * info being sent. The watcher's activity does not complete
+ * until it is cancelled, which stops the watcher.
+ * 
+ * @param <T> the type of info supplied
+ */
+public class PeriodicWatcher<T> implements ActiveRobot
+{
+    private static final Logger LOG =
+        Logger.getLogger(PeriodicWatcher.class.getName());
+
+    private final Topic<T> topic;
+    private final Supplier<T> service;
+    private final ChangeDetector<? super T> detector;
+    private final long intervalNanos;
+    private final long jitterNanos;
+    private final Dispatcher dispatcher;
+    private final Executor executor;
+    private final HashedWheelTimer timer;
+    private final AtomicBoolean polling;
+    private final CompletableFuture<Void> activity;
+    private long nextPoll;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    /**
+     * Create a periodic watcher and schedule its first poll.
+     * 
+     * @param topic the topic to send the info to
+     * @param service the service to poll
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param dispatcher the dispatcher to send the info with
+     * @param executor the executor to poll the service on
+     * @param timer the timer to schedule polls on
+     */
+    public PeriodicWatcher(Topic<T> topic, Supplier<T> service, 
+                           Duration interval, Duration jitter,
+                           Dispatcher dispatcher, Executor executor,
+                           HashedWheelTimer timer)
+    {
+        this(topic, service, null, interval, jitter, dispatcher, executor, 
+             timer);
+    }
+
+    /**
+     * Create a periodic watcher that only sends changed info and schedule 
+     * its first poll.
+     * 
+     * @param topic the topic to send the info to
+     * @param service the service to poll
+     * @param detector the detector that decides if info has changed, or
+     * null to send all info
+     * @param interval the time between polls
+     * @param jitter the maximum random delay added to each poll
+     * @param dispatcher the dispatcher to send the info with
+     * @param executor the executor to poll the service on
+     * @param timer the timer to schedule polls on
+     */
+    public PeriodicWatcher(Topic<T> topic, Supplier<T> service, 
+                           ChangeDetector<? super T> detector,
+                           Duration interval, Duration jitter,
+                           Dispatcher dispatcher, Executor executor,
+                           HashedWheelTimer timer)
+    {
+        if ( interval.isNegative() || interval.isZero() || jitter.isNegative() )
+        {
+            throw new IllegalArgumentException(
+                "Invalid interval "+interval+" or jitter "+jitter);
+        }
+
+        this.topic = topic;
+        this.service = service;
+        this.detector = detector;
+        this.intervalNanos = interval.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.dispatcher = dispatcher;
+        this.executor = executor;
+        this.timer = timer;
+        this.polling = new AtomicBoolean(false);
+        this.activity = new CompletableFuture<>();
+
+        this.nextPoll = System.nanoTime();
+        this.scheduleNext();
+
+        // Stop polling when the activity is cancelled
+        this.activity.whenComplete( (r, e) -> this.timeout.cancel() );
+    }
+
+    /**
+     * Get the watcher's activity.
+     * Cancelling the activity stops the watcher.
+     * 
+     * @return CompletableFuture representing the watcher's activity
+     */
+    @Override
+    public CompletableFuture<Void> activity()
+    {
+        return this.activity;
+    }
+
+    /**
+     * Schedule the next poll, at a fixed rate from the first poll.
+     * Only called by the timer thread once the watcher is constructed.
+     */
+    private void scheduleNext()
+    {
+        this.nextPoll += this.intervalNanos;
+        var jitter = (this.jitterNanos == 0) ? 0 :
+            ThreadLocalRandom.current().nextLong(this.jitterNanos + 1);
+        var delay = Math.max(0, this.nextPoll + jitter - System.nanoTime());
+        this.timeout = this.timer.schedule(this::fire, delay, 
+                                           TimeUnit.NANOSECONDS);
+        if ( this.activity.isDone() )
+        {
+            this.timeout.cancel();
+        }
+    }
+
+    private void fire()
+    {
+        if ( this.activity.isDone() )
+        {
+            return;
+        }
+
+        this.scheduleNext();
+
+        if ( this.polling.compareAndSet(false, true) )
+        {
+            this.executor.execute(this::poll);
+        }
+    }
+
+    private void poll()
+    {
+        try
+        {
+            var info = this.service.get();
+            if ( this.detector == null )
+            {
+                this.dispatcher.dispatch(this.topic, info);
+            }
+            else
+            {
+                this.detector.ifChanged(info, 
+                    changed -> this.dispatcher.dispatch(this.topic, changed));
+            }
+        }
+        catch ( Exception e )
+        {
+            LOG.log(Level.WARNING, "Watcher failed", e);
+        }
+        finally
+        {
+            this.polling.set(false);
+        }
+    }
+
+}
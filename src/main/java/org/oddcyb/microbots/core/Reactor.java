@@ -16,6 +16,7 @@
 package org.oddcyb.microbots.core;
 
 import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.core.event.Subscription;
 
 /**
  * Reacts to something that occurs.
@@ -29,7 +30,8 @@ public interface Reactor<T>
      * When object occurs, perform action.
      * @param id to react to
      * @param action to take
+     * @return the subscription for the action
      */
-    public void on(String id, Action<T> action);
+    public Subscription on(String id, Action<T> action);
     
 }
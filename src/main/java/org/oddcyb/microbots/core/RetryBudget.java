@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.time.Duration;
+
+/**
+ * A limit on the rate of retries shared by many robots.
+ * <p>
+ * The budget is a bucket of retry tokens that refills at a fixed rate up to
+ * its size. Each retry takes a token, and when the bucket is empty robots
+ * fail rather than retry, so a failing dependency cannot cause a storm of
+ * retries.
+ */
+public class RetryBudget
+{
+    private final double size;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Create a retry budget.
+     *
+     * @param retries the number of retries allowed in each period, which is
+     * also the most that can be made at once
+     * @param period the period the retries are allowed in
+     */
+    public RetryBudget(int retries, Duration period)
+    {
+        if ( retries < 1 || period.isNegative() || period.isZero() )
+        {
+            throw new IllegalArgumentException(
+                "Invalid retries "+retries+" or period "+period);
+        }
+
+        this.size = retries;
+        this.tokensPerNano = (double) retries / period.toNanos();
+        this.tokens = retries;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Take a retry from the budget.
+     *
+     * @return true if a retry can be made, false if the budget is spent
+     */
+    public synchronized boolean tryAcquire()
+    {
+        var now = System.nanoTime();
+        this.tokens = Math.min(this.size,
+            this.tokens + (now - this.refilledAt) * this.tokensPerNano);
+        this.refilledAt = now;
+
+        if ( this.tokens < 1 )
+        {
+            return false;
+        }
+
+        this.tokens--;
+        return true;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a failed robot is retried.
+ * <p>
+ * The backoff before each retry grows exponentially up to a maximum, and the
+ * actual delay is a random time up to the backoff, so robots that failed
+ * together do not retry together. Retries are also limited by a budget,
+ * which can be shared by many policies.
+ */
+public class RetryPolicy
+{
+    /**
+     * The budget shared by the default policy, 10 retries a second.
+     */
+    public static final RetryBudget DEFAULT_BUDGET =
+        new RetryBudget(10, Duration.ofSeconds(1));
+
+    /**
+     * A policy of 3 attempts, backing off from 100ms up to 10s, with the
+     * default budget.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(
+        3, Duration.ofMillis(100), Duration.ofSeconds(10), DEFAULT_BUDGET);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final RetryBudget budget;
+
+    /**
+     * Create a retry policy.
+     *
+     * @param maxAttempts the maximum number of attempts, including the first
+     * @param initialBackoff the backoff before the first retry
+     * @param maxBackoff the maximum backoff
+     * @param budget the budget for retries, or null for no limit
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff,
+                       Duration maxBackoff, RetryBudget budget)
+    {
+        if ( maxAttempts < 1 || initialBackoff.isNegative() ||
+             maxBackoff.compareTo(initialBackoff) < 0 )
+        {
+            throw new IllegalArgumentException(
+                "Invalid attempts "+maxAttempts+" or backoff "+
+                initialBackoff+" to "+maxBackoff);
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.budget = budget;
+    }
+
+    /**
+     * Get the maximum number of attempts.
+     *
+     * @return the maximum attempts, including the first
+     */
+    public int getMaxAttempts()
+    {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Check if a failed attempt can be retried, taking a retry from the
+     * budget if it can.
+     *
+     * @param attempt the number of the attempt that failed, from 1
+     * @return true if the attempt can be retried
+     */
+    public boolean canRetry(int attempt)
+    {
+        return attempt < this.maxAttempts &&
+               (this.budget == null || this.budget.tryAcquire());
+    }
+
+    /**
+     * Get a random delay before retrying an attempt.
+     *
+     * @param attempt the number of the attempt that failed, from 1
+     * @return the delay in nanoseconds
+     */
+    public long delayNanos(int attempt)
+    {
+        var shift = Math.min(attempt - 1, 62);
+        var backoff = (this.initialBackoffNanos > (Long.MAX_VALUE >> shift)) ?
+            this.maxBackoffNanos :
+            Math.min(this.maxBackoffNanos, this.initialBackoffNanos << shift);
+        return ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.ActiveRobot;
+import org.oddcyb.microbots.Robot;
+import org.oddcyb.microbots.RobotException;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.metrics.TimerMetrics;
+import org.oddcyb.microbots.core.util.HashedWheelTimer;
+
+/**
+ * Activates a Robot asynchronously, retrying it when it fails.
+ * <p>
+ * Each attempt is made on the executor, and retries wait on a timer rather
+ * than on a thread. The robot's target has a CircuitBreaker, and while the
+ * circuit is open attempts fail without activating the robot. Unlike an
+ * AsyncActiveRobot, the activity completes with the robot's last failure
+ * when it cannot be retried.
+ * <p>
+ * Cancelling the activity stops any retry and interrupts a running attempt.
+ */
+public class RetryingActiveRobot implements ActiveRobot
+{
+    private static final Logger LOG =
+        Logger.getLogger(RetryingActiveRobot.class.getName());
+
+    private final Robot robot;
+    private final Executor executor;
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
+    private final HashedWheelTimer timer;
+    private final TimerMetrics metrics;
+    private final CompletableFuture<Void> activity;
+    private Thread worker;
+    private HashedWheelTimer.Timeout retry;
+
+    /**
+     * Create a retrying ActiveRobot and make its first attempt.
+     *
+     * @param robot the robot to activate
+     * @param executor the executor to make attempts on
+     * @param policy the policy for retrying failed attempts
+     * @param breaker the circuit breaker of the robot's target
+     * @param timer the timer to wait for retries on
+     */
+    public RetryingActiveRobot(Robot robot, Executor executor,
+                               RetryPolicy policy, CircuitBreaker breaker,
+                               HashedWheelTimer timer)
+    {
+        this.robot = robot;
+        this.executor = executor;
+        this.policy = policy;
+        this.breaker = breaker;
+        this.timer = timer;
+        this.metrics = Metrics.ENABLED ? Metrics.robot(robot) : null;
+        this.activity = new CompletableFuture<>();
+
+        this.activity.whenComplete( (r, e) -> this.stop() );
+
+        this.attempt(1);
+    }
+
+    /**
+     * Get the robots activity.
+     * Cancelling the activity stops the robot.
+     *
+     * @return CompletableFuture representing the robots activity.
+     */
+    @Override
+    public CompletableFuture<Void> activity()
+    {
+        return this.activity;
+    }
+
+    private void attempt(int attempt)
+    {
+        if ( this.activity.isDone() )
+        {
+            return;
+        }
+
+        var permit = this.breaker.acquire();
+        if ( !permit.isAllowed() )
+        {
+            this.activity.completeExceptionally(
+                new RobotException("Circuit open, robot not activated"));
+            return;
+        }
+
+        try
+        {
+            this.executor.execute( () -> this.activate(attempt, permit) );
+        }
+        catch ( RuntimeException re )
+        {
+            this.breaker.release(permit);
+            this.activity.completeExceptionally(re);
+        }
+    }
+
+    private void activate(int attempt, CircuitBreaker.Permit permit)
+    {
+        var reported = false;
+        try
+        {
+            reported = this.attempted(attempt);
+        }
+        catch ( Throwable t )
+        {
+            LOG.log(Level.SEVERE, "Robot could not be retried", t);
+            this.activity.completeExceptionally(t);
+        }
+        finally
+        {
+            // The attempt was allowed by the breaker, which must hear of it
+            // even if it was not made or its result does not count
+            if ( !reported )
+            {
+                this.breaker.release(permit);
+            }
+        }
+    }
+
+    /**
+     * Make an attempt that the breaker has allowed.
+     *
+     * @param attempt the number of the attempt, from 1
+     * @return true if the result was reported to the breaker
+     */
+    private boolean attempted(int attempt)
+    {
+        synchronized ( this )
+        {
+            if ( this.activity.isDone() )
+            {
+                return false;
+            }
+            this.worker = Thread.currentThread();
+        }
+
+        Throwable failure = null;
+        var start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try
+        {
+            this.robot.activate();
+        }
+        catch ( Throwable t )
+        {
+            failure = t;
+            if ( Metrics.ENABLED )
+            {
+                this.metrics.failed();
+            }
+        }
+        finally
+        {
+            if ( Metrics.ENABLED )
+            {
+                this.metrics.record(System.nanoTime()-start);
+            }
+
+            synchronized ( this )
+            {
+                this.worker = null;
+            }
+            Thread.interrupted();
+        }
+
+        if ( failure == null )
+        {
+            this.breaker.success();
+            this.activity.complete(null);
+            return true;
+        }
+        else if ( this.activity.isDone() )
+        {
+            // Stopped while active, do not count against the target
+            LOG.log(Level.FINE, "Robot failed", failure);
+            return false;
+        }
+
+        this.breaker.failure();
+        this.retry(attempt, failure);
+        return true;
+    }
+
+    private void retry(int attempt, Throwable failure)
+    {
+        if ( !(failure instanceof Exception) )
+        {
+            // Errors are not worth retrying
+            LOG.log(Level.SEVERE, "Robot failed", failure);
+            this.activity.completeExceptionally(failure);
+            return;
+        }
+
+        if ( !this.policy.canRetry(attempt) )
+        {
+            LOG.log(Level.WARNING, "Robot failed after "+attempt+" attempts",
+                    failure);
+            this.activity.completeExceptionally(failure);
+            return;
+        }
+
+        LOG.log(Level.FINE, "Robot failed, retrying", failure);
+        var timeout = this.timer.schedule( () -> this.attempt(attempt+1),
+                                           this.policy.delayNanos(attempt),
+                                           TimeUnit.NANOSECONDS);
+        synchronized ( this )
+        {
+            this.retry = timeout;
+        }
+
+        if ( this.activity.isDone() )
+        {
+            timeout.cancel();
+        }
+    }
+
+    private synchronized void stop()
+    {
+        if ( this.retry != null )
+        {
+            this.retry.cancel();
+        }
+
+        if ( this.worker != null )
+        {
+            this.worker.interrupt();
+        }
+    }
+
+}
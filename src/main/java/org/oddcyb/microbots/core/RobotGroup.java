@@ -0,0 +1,293 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.oddcyb.microbots.ActiveRobot;
+import org.oddcyb.microbots.Robot;
+import org.oddcyb.microbots.RobotException;
+
+/**
+ * Activates a group of robots, at most a fixed number at a time.
+ * <p>
+ * The group has one task on the executor for each robot that can be active
+ * at once, and each task activates robots in turn until there are none left,
+ * so a large group does not flood the executor. The group's Mode decides
+ * when its activity completes. When it completes before all the robots have
+ * been activated, the robots still active are interrupted and the rest are
+ * not activated. Cancelling the activity does the same.
+ *
+ * @param <R> the type of robot in the group
+ */
+public class RobotGroup<R extends Robot> implements ActiveRobot
+{
+    private static final Object SUCCEEDED = new Object();
+
+    /**
+     * When a group's activity completes.
+     */
+    public enum Mode
+    {
+        /**
+         * When all the robots have finished, with the result of each.
+         */
+        JOIN_ALL,
+
+        /**
+         * When a robot succeeds, with the robots that have succeeded.
+         * Fails if no robot succeeds.
+         */
+        FIRST_SUCCESS,
+
+        /**
+         * When all the robots have succeeded, or fails with the failure of
+         * the first robot that fails.
+         */
+        FAIL_FAST;
+    }
+
+    private final List<R> robots;
+    private final Mode mode;
+    private final AtomicInteger next;
+    private final AtomicInteger remaining;
+    private final AtomicReferenceArray<Object> outcomes;
+    private final Thread[] workers;
+    private final CompletableFuture<Result<R>> activity;
+
+    /**
+     * Create a group and start activating its robots.
+     *
+     * @param robots the robots in the group
+     * @param parallelism the maximum number of robots active at once
+     * @param mode when the group's activity completes
+     * @param executor the executor to activate the robots on
+     */
+    public RobotGroup(Collection<? extends R> robots, int parallelism,
+                      Mode mode, Executor executor)
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive: "+parallelism);
+        }
+
+        this.robots = List.copyOf(robots);
+        this.mode = mode;
+        this.next = new AtomicInteger(0);
+        this.remaining = new AtomicInteger(this.robots.size());
+        this.outcomes = new AtomicReferenceArray<>(this.robots.size());
+        this.workers = new Thread[Math.min(parallelism, this.robots.size())];
+        this.activity = new CompletableFuture<>();
+
+        this.activity.whenComplete( (r, e) -> this.stop() );
+
+        if ( this.robots.isEmpty() )
+        {
+            this.completeAll();
+        }
+
+        for ( int i=0 ; i<this.workers.length ; i++ )
+        {
+            var slot = i;
+            executor.execute( () -> this.work(slot) );
+        }
+    }
+
+    /**
+     * Get the group's activity.
+     * Cancelling the activity stops the robots.
+     *
+     * @return CompletableFuture of the results of the robots
+     */
+    @Override
+    public CompletableFuture<Result<R>> activity()
+    {
+        return this.activity;
+    }
+
+    private void work(int slot)
+    {
+        synchronized ( this )
+        {
+            if ( this.activity.isDone() )
+            {
+                return;
+            }
+            this.workers[slot] = Thread.currentThread();
+        }
+
+        try
+        {
+            int index;
+            while ( !this.activity.isDone() &&
+                    (index = this.next.getAndIncrement()) < this.robots.size() )
+            {
+                Object outcome;
+                try
+                {
+                    this.robots.get(index).activate();
+                    outcome = SUCCEEDED;
+                }
+                catch ( Throwable t )
+                {
+                    // Errors count too, or the group would never complete
+                    outcome = t;
+                }
+
+                this.outcomes.set(index, outcome);
+                this.finished(outcome);
+            }
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                this.workers[slot] = null;
+            }
+            // Clear an interrupt from stopping the group, so it does not
+            // leak into the executor's next task
+            Thread.interrupted();
+        }
+    }
+
+    private void finished(Object outcome)
+    {
+        if ( outcome == SUCCEEDED && this.mode == Mode.FIRST_SUCCESS )
+        {
+            this.activity.complete(this.result());
+        }
+        else if ( outcome != SUCCEEDED && this.mode == Mode.FAIL_FAST )
+        {
+            this.activity.completeExceptionally((Throwable) outcome);
+        }
+
+        if ( this.remaining.decrementAndGet() == 0 )
+        {
+            this.completeAll();
+        }
+    }
+
+    private void completeAll()
+    {
+        if ( this.mode != Mode.FIRST_SUCCESS )
+        {
+            this.activity.complete(this.result());
+            return;
+        }
+
+        var failure = new RobotException("No robot in the group succeeded");
+        this.result().getFailed().values().forEach(failure::addSuppressed);
+        this.activity.completeExceptionally(failure);
+    }
+
+    private Result<R> result()
+    {
+        var succeeded = new ArrayList<R>();
+        var failed = new LinkedHashMap<R,Throwable>();
+        var stopped = new ArrayList<R>();
+
+        for ( int i=0 ; i<this.robots.size() ; i++ )
+        {
+            var outcome = this.outcomes.get(i);
+            if ( outcome == SUCCEEDED )
+            {
+                succeeded.add(this.robots.get(i));
+            }
+            else if ( outcome != null )
+            {
+                failed.put(this.robots.get(i), (Throwable) outcome);
+            }
+            else
+            {
+                stopped.add(this.robots.get(i));
+            }
+        }
+
+        return new Result<>(succeeded, failed, stopped);
+    }
+
+    private synchronized void stop()
+    {
+        for ( var worker : this.workers )
+        {
+            if ( worker != null )
+            {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * The results of the robots in a group when its activity completed.
+     *
+     * @param <R> the type of robot in the group
+     */
+    public static class Result<R>
+    {
+        private final List<R> succeeded;
+        private final Map<R,Throwable> failed;
+        private final List<R> stopped;
+
+        private Result(List<R> succeeded, Map<R,Throwable> failed,
+                       List<R> stopped)
+        {
+            this.succeeded = Collections.unmodifiableList(succeeded);
+            this.failed = Collections.unmodifiableMap(failed);
+            this.stopped = Collections.unmodifiableList(stopped);
+        }
+
+        /**
+         * Get the robots that succeeded.
+         *
+         * @return the robots that succeeded, in group order
+         */
+        public List<R> getSucceeded()
+        {
+            return this.succeeded;
+        }
+
+        /**
+         * Get the robots that failed.
+         *
+         * @return the failure of each failed robot, in group order
+         */
+        public Map<R,Throwable> getFailed()
+        {
+            return this.failed;
+        }
+
+        /**
+         * Get the robots that had not finished when the activity completed.
+         *
+         * @return the robots that were stopped or not activated
+         */
+        public List<R> getStopped()
+        {
+            return this.stopped;
+        }
+    }
+
+}
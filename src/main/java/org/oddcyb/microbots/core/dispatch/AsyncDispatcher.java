@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * A dispatcher that performs the actions for an event on an executor.
+ * Dispatching an event does not wait for the actions to be performed. Each
+ * subscriber performs its events in the order they were dispatched.
+ */
+public class AsyncDispatcher implements Dispatcher
+{
+    /**
+     * The shared async dispatcher.
+     */
+    static final AsyncDispatcher DEFAULT = new AsyncDispatcher(
+        Executors.newCachedThreadPool(new RobotThreadFactory()));
+
+    static
+    {
+        if ( Metrics.ENABLED )
+        {
+            Metrics.executor("AsyncDispatcher", DEFAULT.executor);
+        }
+    }
+
+    private final Executor executor;
+
+    /**
+     * Create an async dispatcher.
+     *
+     * @param executor the executor to perform the actions
+     */
+    public AsyncDispatcher(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Dispatch an event.
+     *
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        EventRegistry.send(event, this.executor);
+    }
+
+    /**
+     * Dispatch info to a topic.
+     *
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        topic.post(info, this.executor);
+    }
+
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.core.event.BinaryEventCodec;
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventCodec;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * A dispatcher that also forwards selected events to a BridgeReceiver in
+ * another JVM.
+ * <p>
+ * Every event is passed to a local dispatcher. Events with a selected id
+ * are queued for a writer thread, which encodes them as length prefixed
+ * frames into a direct buffer and writes the buffer to a non-blocking
+ * channel when it is full or the queue is empty, so a burst of events is
+ * sent in a few writes. The address is a loopback InetSocketAddress, or a
+ * Unix domain socket address on JVMs that support them.
+ * <p>
+ * The writer connects when there are events to send, and reconnects if the
+ * connection fails. Events are dropped when the queue is full, when they
+ * cannot be encoded, when they are being written as a connection fails and
+ * when they cannot be sent because there is no connection at shutdown.
+ */
+public class BridgeDispatcher implements Dispatcher
+{
+    private static final Logger LOG =
+        Logger.getLogger(BridgeDispatcher.class.getName());
+
+    /**
+     * The size of the frame buffer, and the largest frame that can be sent.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long RECONNECT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final RobotThreadFactory WRITER_THREADS =
+        new RobotThreadFactory();
+
+    private final SocketAddress address;
+    private final Predicate<String> forward;
+    private final Dispatcher dispatcher;
+    private final EventCodec codec;
+    private final int capacity;
+    private final Queue<Event<?>> queue;
+    private final AtomicInteger pending;
+    private final LongAdder dropped;
+    private final ByteBuffer buffer;
+    private final Thread writer;
+    private int framed;
+    private Selector selector;
+    private SocketChannel channel;
+    private volatile boolean running;
+
+    /**
+     * Create a bridge dispatcher, without Java serialization of info, and
+     * start its writer thread.
+     *
+     * @param address the address of the BridgeReceiver
+     * @param forward the test of which event ids to forward
+     * @param dispatcher the local dispatcher
+     */
+    public BridgeDispatcher(SocketAddress address, Predicate<String> forward,
+                            Dispatcher dispatcher)
+    {
+        this(address, forward, dispatcher, new BinaryEventCodec(false),
+             64 * 1024);
+    }
+
+    /**
+     * Create a bridge dispatcher and start its writer thread.
+     *
+     * @param address the address of the BridgeReceiver
+     * @param forward the test of which event ids to forward
+     * @param dispatcher the local dispatcher
+     * @param codec the codec to encode events with
+     * @param capacity the maximum number of events waiting to be sent
+     */
+    public BridgeDispatcher(SocketAddress address, Predicate<String> forward,
+                            Dispatcher dispatcher, EventCodec codec,
+                            int capacity)
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Capacity must be positive: "+capacity);
+        }
+
+        this.address = address;
+        this.forward = forward;
+        this.dispatcher = dispatcher;
+        this.codec = codec;
+        this.capacity = capacity;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger(0);
+        this.dropped = new LongAdder();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.running = true;
+
+        this.writer = WRITER_THREADS.newThread(this::write);
+        this.writer.start();
+    }
+
+    /**
+     * Get the number of events waiting to be sent.
+     *
+     * @return the number of waiting events
+     */
+    public int getDepth()
+    {
+        return this.pending.get();
+    }
+
+    /**
+     * Get the number of events that were not sent.
+     *
+     * @return the number of dropped events
+     */
+    public long getDropped()
+    {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Dispatch an event.
+     *
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        this.dispatcher.dispatch(event);
+
+        if ( this.forward.test(event.getId()) )
+        {
+            this.enqueue(event.copy());
+        }
+    }
+
+    /**
+     * Dispatch info to a topic.
+     *
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        this.dispatcher.dispatch(topic, info);
+
+        if ( this.forward.test(topic.getId()) )
+        {
+            this.enqueue(new Event<>(topic.getId(), info));
+        }
+    }
+
+    /**
+     * Stop the writer once it has sent the waiting events.
+     * If it is not connected, the waiting events are dropped.
+     */
+    public void shutdown()
+    {
+        this.running = false;
+        LockSupport.unpark(this.writer);
+    }
+
+    /**
+     * Wait for the writer to stop after a shutdown.
+     *
+     * @param timeout the maximum time to wait
+     * @return true if the writer has stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(Duration timeout) 
+        throws InterruptedException
+    {
+        this.writer.join(Math.max(1, timeout.toMillis()));
+        return !this.writer.isAlive();
+    }
+
+    private void enqueue(Event<?> event)
+    {
+        if ( !this.running )
+        {
+            throw new IllegalStateException("Dispatcher has been shut down");
+        }
+
+        if ( this.pending.incrementAndGet() > this.capacity )
+        {
+            this.pending.decrementAndGet();
+            this.dropped.increment();
+            return;
+        }
+
+        this.queue.offer(event);
+        LockSupport.unpark(this.writer);
+    }
+
+    private void write()
+    {
+        while ( this.running || (this.pending.get() > 0 &&
+                                 this.channel != null) )
+        {
+            if ( this.pending.get() == 0 )
+            {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+
+            if ( this.channel == null && !this.connect() )
+            {
+                LockSupport.parkNanos(this, RECONNECT_NANOS);
+                continue;
+            }
+
+            try
+            {
+                this.drain();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.log(Level.WARNING, "Bridge to "+this.address+" failed",
+                        ioe);
+                this.disconnect();
+            }
+        }
+
+        this.disconnect();
+
+        // Not connected at shutdown, so the waiting events cannot be sent
+        while ( this.queue.poll() != null )
+        {
+            this.pending.decrementAndGet();
+            this.dropped.increment();
+        }
+    }
+
+    private boolean connect()
+    {
+        try
+        {
+            this.channel = SocketChannel.open(this.address);
+            if ( this.address instanceof InetSocketAddress )
+            {
+                this.channel.setOption(StandardSocketOptions.TCP_NODELAY,
+                                       true);
+            }
+            this.channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.channel.register(this.selector, 0);
+            return true;
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.FINE, "Unable to connect to "+this.address, ioe);
+            this.disconnect();
+            return false;
+        }
+    }
+
+    private void disconnect()
+    {
+        try
+        {
+            if ( this.channel != null )
+            {
+                this.channel.close();
+            }
+            if ( this.selector != null )
+            {
+                this.selector.close();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.FINE, "Unable to close bridge", ioe);
+        }
+
+        this.channel = null;
+        this.selector = null;
+        this.buffer.clear();
+
+        // Events framed but not written are lost with the connection
+        this.dropped.add(this.framed);
+        this.framed = 0;
+    }
+
+    private void drain() throws IOException
+    {
+        Event<?> event;
+        while ( (event = this.queue.poll()) != null )
+        {
+            this.pending.decrementAndGet();
+            this.frame(event);
+        }
+
+        this.flush();
+    }
+
+    private void frame(Event<?> event) throws IOException
+    {
+        var start = this.buffer.position();
+        if ( this.buffer.remaining() > 4 )
+        {
+            try
+            {
+                this.buffer.position(start + 4);
+                this.codec.encode(event.getId(), event.getInfo(),
+                                  this.buffer);
+                this.buffer.putInt(start, this.buffer.position()-start-4);
+                this.framed++;
+                return;
+            }
+            catch ( BufferOverflowException boe )
+            {
+                this.buffer.position(start);
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                this.buffer.position(start);
+                this.dropped.increment();
+                LOG.log(Level.WARNING, "Unable to encode "+event.getId(), iae);
+                return;
+            }
+        }
+
+        if ( start == 0 )
+        {
+            this.dropped.increment();
+            LOG.warning("Event "+event.getId()+" is larger than a frame");
+            return;
+        }
+
+        // Send the full buffer and try again with an empty one
+        this.flush();
+        this.frame(event);
+    }
+
+    private void flush() throws IOException
+    {
+        this.buffer.flip();
+        try
+        {
+            while ( this.buffer.hasRemaining() )
+            {
+                if ( this.channel.write(this.buffer) == 0 )
+                {
+                    // The socket buffer is full, wait until it drains
+                    var key = this.channel.keyFor(this.selector);
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    this.selector.select(1000);
+                    this.selector.selectedKeys().clear();
+                    key.interestOps(0);
+                }
+            }
+        }
+        finally
+        {
+            if ( !this.buffer.hasRemaining() )
+            {
+                this.framed = 0;
+            }
+            this.buffer.clear();
+        }
+    }
+
+}
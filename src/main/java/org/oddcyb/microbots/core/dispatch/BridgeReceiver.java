@@ -0,0 +1,341 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.core.event.BinaryEventCodec;
+import org.oddcyb.microbots.core.event.EventCodec;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * Receives the events forwarded by BridgeDispatchers in other JVMs and
+ * dispatches them in this JVM.
+ * <p>
+ * A single selector thread accepts connections and reads frames into a
+ * direct buffer for each connection, decoding every complete frame that was
+ * read. Events are dispatched on the selector thread, so a dispatcher that
+ * performs actions on another thread, such as {@link Dispatchers#ASYNC},
+ * stops slow actions delaying reads. Events must not be dispatched with a
+ * BridgeDispatcher that forwards them back.
+ * <p>
+ * Any process that can connect to the address can send events, so bind it
+ * to a loopback address or a Unix domain socket, and only decode Java
+ * serialized info from trusted peers. A Unix domain socket file is deleted
+ * when the receiver stops, so the path can be bound again.
+ */
+public class BridgeReceiver
+{
+    private static final Logger LOG =
+        Logger.getLogger(BridgeReceiver.class.getName());
+
+    private static final RobotThreadFactory SELECTOR_THREADS =
+        new RobotThreadFactory();
+
+    private final ServerSocketChannel server;
+    private final Path socketFile;
+    private final Selector selector;
+    private final Dispatcher dispatcher;
+    private final EventCodec codec;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Create a bridge receiver that dispatches events asynchronously,
+     * without Java serialization of info, and start its selector thread.
+     *
+     * @param address the address to listen on, e.g. a loopback address with
+     * port 0 for any free port
+     * @throws IOException if the address cannot be bound
+     */
+    public BridgeReceiver(SocketAddress address) throws IOException
+    {
+        this(address, Dispatchers.ASYNC.dispatcher(),
+             new BinaryEventCodec(false));
+    }
+
+    /**
+     * Create a bridge receiver and start its selector thread.
+     *
+     * @param address the address to listen on
+     * @param dispatcher the dispatcher for the received events
+     * @param codec the codec to decode events with
+     * @throws IOException if the address cannot be bound
+     */
+    public BridgeReceiver(SocketAddress address, Dispatcher dispatcher,
+                          EventCodec codec)
+        throws IOException
+    {
+        this.dispatcher = dispatcher;
+        this.codec = codec;
+        this.server = open(address);
+        this.server.bind(address);
+        this.socketFile = socketFile(address);
+        this.server.configureBlocking(false);
+        this.selector = Selector.open();
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.running = true;
+
+        this.thread = SELECTOR_THREADS.newThread(this::select);
+        this.thread.start();
+    }
+
+    /**
+     * Get the address the receiver is listening on.
+     *
+     * @return the bound address
+     * @throws IOException if the address cannot be read
+     */
+    public SocketAddress getAddress() throws IOException
+    {
+        return this.server.getLocalAddress();
+    }
+
+    /**
+     * Stop receiving and close the connections.
+     * This waits for the selector thread to close the channels, so the
+     * address can be bound again when it returns.
+     */
+    public void shutdown()
+    {
+        this.running = false;
+        this.selector.wakeup();
+
+        if ( Thread.currentThread() == this.thread )
+        {
+            return;
+        }
+
+        try
+        {
+            this.thread.join();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void select()
+    {
+        try
+        {
+            while ( this.running )
+            {
+                this.selector.select();
+
+                var keys = this.selector.selectedKeys();
+                for ( var key : keys )
+                {
+                    if ( !key.isValid() )
+                    {
+                        continue;
+                    }
+
+                    if ( key.isAcceptable() )
+                    {
+                        this.accept();
+                    }
+                    else if ( key.isReadable() )
+                    {
+                        this.read(key);
+                    }
+                }
+                keys.clear();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.SEVERE, "Bridge receiver failed", ioe);
+        }
+        finally
+        {
+            this.close();
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        var channel = this.server.accept();
+        if ( channel == null )
+        {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.register(this.selector, SelectionKey.OP_READ,
+                         ByteBuffer.allocateDirect(BridgeDispatcher.BUFFER_SIZE));
+    }
+
+    private void read(SelectionKey key)
+    {
+        var channel = (SocketChannel) key.channel();
+        var buffer = (ByteBuffer) key.attachment();
+
+        try
+        {
+            if ( channel.read(buffer) < 0 )
+            {
+                closeChannel(key);
+                return;
+            }
+
+            buffer.flip();
+            while ( buffer.remaining() > 4 )
+            {
+                var start = buffer.position();
+                var length = buffer.getInt(start);
+                if ( length <= 0 || length > buffer.capacity() - 4 )
+                {
+                    LOG.warning("Invalid frame length "+length);
+                    closeChannel(key);
+                    return;
+                }
+
+                if ( buffer.remaining() < length + 4 )
+                {
+                    break;
+                }
+
+                var frame = buffer.duplicate();
+                frame.position(start + 4);
+                frame.limit(start + 4 + length);
+                buffer.position(start + 4 + length);
+
+                this.receive(frame);
+            }
+            buffer.compact();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.FINE, "Bridge connection failed", ioe);
+            closeChannel(key);
+        }
+    }
+
+    private void receive(ByteBuffer frame)
+    {
+        try
+        {
+            this.dispatcher.dispatch(this.codec.decode(frame));
+        }
+        catch ( Exception e )
+        {
+            LOG.log(Level.WARNING, "Unable to receive event", e);
+        }
+    }
+
+    private void close()
+    {
+        for ( var key : this.selector.keys() )
+        {
+            closeChannel(key);
+        }
+
+        try
+        {
+            this.selector.close();
+            this.server.close();
+            if ( this.socketFile != null )
+            {
+                Files.deleteIfExists(this.socketFile);
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.FINE, "Unable to close bridge receiver", ioe);
+        }
+    }
+
+    private static void closeChannel(SelectionKey key)
+    {
+        key.cancel();
+        try
+        {
+            key.channel().close();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.FINE, "Unable to close bridge connection", ioe);
+        }
+    }
+
+    /**
+     * Get the socket file of a Unix domain socket address, which is read
+     * reflectively as Java 11 does not have them.
+     *
+     * @return the file, or null if the address is not a Unix domain socket
+     */
+    private static Path socketFile(SocketAddress address)
+    {
+        if ( address instanceof InetSocketAddress )
+        {
+            return null;
+        }
+
+        try
+        {
+            return (Path) address.getClass().getMethod("getPath")
+                .invoke(address);
+        }
+        catch ( ReflectiveOperationException | ClassCastException e )
+        {
+            LOG.log(Level.FINE, "No socket file for "+address, e);
+            return null;
+        }
+    }
+
+    /**
+     * Open a server channel for an address. Addresses other than internet
+     * addresses, such as Unix domain socket addresses on Java 16 and later,
+     * need a channel of their protocol family, which is opened reflectively
+     * as Java 11 does not have them.
+     */
+    private static ServerSocketChannel open(SocketAddress address)
+        throws IOException
+    {
+        if ( address instanceof InetSocketAddress )
+        {
+            return ServerSocketChannel.open();
+        }
+
+        try
+        {
+            var family = StandardProtocolFamily.valueOf("UNIX");
+            return (ServerSocketChannel) ServerSocketChannel.class
+                .getMethod("open", ProtocolFamily.class)
+                .invoke(null, family);
+        }
+        catch ( ReflectiveOperationException | IllegalArgumentException e )
+        {
+            throw new IOException("Unsupported address "+address, e);
+        }
+    }
+
+}
@@ -16,6 +16,7 @@
 package org.oddcyb.microbots.core.dispatch;
 
 import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.Topic;
 
 /**
  * A dispatcher of events.
@@ -29,6 +30,20 @@ public interface Dispatcher
      * 
      * @param event the event to dispatch 
      */
-    public void dispatch(Event event);
+    public void dispatch(Event<?> event);
+    
+    /**
+     * Dispatch info to a topic.
+     * By default this creates and dispatches an Event for the topic's id;
+     * dispatchers that can deliver to the topic directly should override it.
+     * 
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    public default <T> void dispatch(Topic<T> topic, T info)
+    {
+        this.dispatch(new Event<>(topic.getId(), info));
+    }
     
 }
@@ -26,7 +26,36 @@ public enum Dispatchers implements DispatcherFactory
     /**
      * A factory for the main event dispatcher.
      */
-    EVENT( () -> { return (event) -> EventRegistry.send(event); } );
+    EVENT( () -> { return EventRegistry.dispatcher(); } ),
+    
+    /**
+     * A factory for the async event dispatcher.
+     * Events are performed on a shared executor, in order for each subscriber.
+     */
+    ASYNC( () -> { return AsyncDispatcher.DEFAULT; } ),
+    
+    /**
+     * A factory for the ring buffer event dispatcher.
+     * Events are handed to a single consumer thread through a preallocated
+     * ring, see {@link RingBufferDispatcher} for the system properties that
+     * configure it.
+     */
+    RING( () -> { return RingBufferDispatcher.Shared.DISPATCHER; } ),
+    
+    /**
+     * A factory for the striped event dispatcher.
+     * Events with the same partition key are performed in order on one lane,
+     * events with different keys are performed in parallel.
+     */
+    STRIPED( () -> { return StripedDispatcher.Shared.DISPATCHER; } ),
+    
+    /**
+     * A factory for the recycling event dispatcher.
+     * Events are performed on the sending thread, like EVENT, and info sent
+     * to an id with {@link RecyclingDispatcher#dispatch(String, Object)} uses
+     * a pooled event rather than a new one.
+     */
+    RECYCLING( () -> { return RecyclingDispatcher.Shared.DISPATCHER; } );
     
     private final DispatcherFactory dispatcherFactory;
     
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventJournal;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * A dispatcher that appends each event to an EventJournal before passing it
+ * to another dispatcher.
+ * <p>
+ * The journal is synced to disk after a number of events, after an interval
+ * or both, rather than on every dispatch. Events dispatched since the last
+ * sync can be lost if the host fails, but not if only the JVM does.
+ * <p>
+ * The journal's checkpoint is advanced past each event once the dispatcher
+ * it was passed to returns, and every earlier event has also been handled.
+ * Replay the journal once the reactors are registered, and before new
+ * events are dispatched, to dispatch the events that were not handled
+ * before a restart. With a dispatcher that performs actions on the sending
+ * thread, such as EVENT, an event is handled once its actions have been
+ * performed. With an asynchronous dispatcher it is handled once it has been
+ * handed over, so events still waiting for a reactor when the JVM stops are
+ * not replayed.
+ * <p>
+ * Events that cannot be appended, such as those with info the journal's 
+ * codec cannot encode, are still dispatched but are not journalled. A 
+ * warning is logged the first time each type of info cannot be appended.
+ */
+public class JournalDispatcher implements Dispatcher
+{
+    private static final Logger LOG = 
+        Logger.getLogger(JournalDispatcher.class.getName());
+
+    private static final long NOT_JOURNALLED = -1;
+
+    private final EventJournal journal;
+    private final Dispatcher dispatcher;
+    private final int syncEvery;
+    private final AtomicInteger unsynced;
+    private final TreeSet<Long> dispatching;
+    private final ScheduledExecutorService syncer;
+    private final Set<Class<?>> unjournalled;
+
+    /**
+     * Create a journal dispatcher.
+     *
+     * @param journal the journal to append events to
+     * @param dispatcher the dispatcher to pass events to
+     * @param syncEvery the number of events between syncs, or 0 to not sync
+     * by number
+     * @param syncInterval the time between syncs, or zero to not sync by time
+     */
+    public JournalDispatcher(EventJournal journal, Dispatcher dispatcher,
+                             int syncEvery, Duration syncInterval)
+    {
+        if ( syncEvery < 0 || syncInterval.isNegative() )
+        {
+            throw new IllegalArgumentException(
+                "Invalid sync every "+syncEvery+" or interval "+syncInterval);
+        }
+
+        this.journal = journal;
+        this.dispatcher = dispatcher;
+        this.syncEvery = syncEvery;
+        this.unsynced = new AtomicInteger(0);
+        this.dispatching = new TreeSet<>();
+        this.unjournalled = ConcurrentHashMap.newKeySet();
+
+        if ( syncInterval.isZero() )
+        {
+            this.syncer = null;
+        }
+        else
+        {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(
+                new RobotThreadFactory());
+            var nanos = syncInterval.toNanos();
+            this.syncer.scheduleWithFixedDelay(journal::sync, nanos, nanos,
+                                               TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Dispatch an event.
+     *
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        var position = this.append(event.getId(), event.getInfo());
+        try
+        {
+            this.dispatcher.dispatch(event);
+        }
+        finally
+        {
+            this.handled(position);
+        }
+    }
+
+    /**
+     * Dispatch info to a topic.
+     *
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        var position = this.append(topic.getId(), info);
+        try
+        {
+            this.dispatcher.dispatch(topic, info);
+        }
+        finally
+        {
+            this.handled(position);
+        }
+    }
+
+    /**
+     * Dispatch the events in the journal that were not handled, oldest 
+     * first.
+     * The events are passed to the dispatcher without being appended again,
+     * and the checkpoint is advanced as each one is handled.
+     *
+     * @throws IOException if the journal cannot be read
+     */
+    public void replay() throws IOException
+    {
+        this.journal.replay(this.journal.getCheckpoint(), (event, next) -> {
+            try
+            {
+                this.dispatcher.dispatch(event);
+            }
+            finally
+            {
+                this.journal.setCheckpoint(next);
+            }
+        });
+    }
+
+    /**
+     * Stop syncing and close the journal.
+     */
+    public void shutdown()
+    {
+        if ( this.syncer != null )
+        {
+            this.syncer.shutdown();
+        }
+        this.journal.close();
+    }
+
+    /**
+     * Append an event to the journal.
+     *
+     * @return the position of the event in the journal, or NOT_JOURNALLED
+     * if it could not be appended
+     */
+    private long append(String id, Object info)
+    {
+        long position;
+        synchronized ( this.dispatching )
+        {
+            // Appended and marked together, so the checkpoint cannot pass
+            // an event that is about to be dispatched
+            try
+            {
+                position = this.journal.append(id, info);
+            }
+            catch ( RuntimeException re )
+            {
+                var type = (info == null) ? Void.class : info.getClass();
+                if ( this.unjournalled.add(type) )
+                {
+                    LOG.log(Level.WARNING, 
+                        "Failed to journal {0} info, dispatching anyway : {1}",
+                        new Object[]{ type.getName(), re });
+                }
+                return NOT_JOURNALLED;
+            }
+            this.dispatching.add(position);
+        }
+
+        if ( this.syncEvery > 0 &&
+             this.unsynced.incrementAndGet() % this.syncEvery == 0 )
+        {
+            this.journal.sync();
+        }
+        return position;
+    }
+
+    /**
+     * Advance the checkpoint once an event has been handled.
+     * The checkpoint stops at the oldest event still being dispatched.
+     *
+     * @param position the position of the event
+     */
+    private void handled(long position)
+    {
+        if ( position == NOT_JOURNALLED )
+        {
+            return;
+        }
+
+        synchronized ( this.dispatching )
+        {
+            this.dispatching.remove(position);
+            this.journal.setCheckpoint(this.dispatching.isEmpty() ?
+                this.journal.position() : this.dispatching.first());
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventPool;
+import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Topic;
+
+/**
+ * A dispatcher that sends info to ids using pooled events.
+ * This lets info be sent by id through an event-based dispatcher without
+ * creating an Event for each send. Topic sends already need no Event, so
+ * they are passed straight to the wrapped dispatcher. The wrapped 
+ * dispatcher must follow the ownership rules of {@link EventPool}.
+ * <p>
+ * The shared recycling dispatcher sends through the EventRegistry, and is
+ * also provided by {@link Dispatchers#RECYCLING}.
+ */
+public class RecyclingDispatcher implements Dispatcher
+{
+    /**
+     * Holds the shared recycling dispatcher.
+     */
+    static class Shared
+    {
+        static final RecyclingDispatcher DISPATCHER = 
+            new RecyclingDispatcher(EventRegistry.dispatcher());
+    }
+
+    private final Dispatcher dispatcher;
+
+    /**
+     * Create a recycling dispatcher.
+     *
+     * @param dispatcher the dispatcher to send the pooled events with
+     */
+    public RecyclingDispatcher(Dispatcher dispatcher)
+    {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Get the shared recycling dispatcher, which sends pooled events through
+     * the EventRegistry.
+     *
+     * @return the shared recycling dispatcher
+     */
+    public static RecyclingDispatcher shared()
+    {
+        return Shared.DISPATCHER;
+    }
+
+    /**
+     * Dispatch an event.
+     *
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        this.dispatcher.dispatch(event);
+    }
+
+    /**
+     * Dispatch info to a topic.
+     *
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        this.dispatcher.dispatch(topic, info);
+    }
+
+    /**
+     * Dispatch info to an id using a pooled event.
+     *
+     * @param <T> the type of the info
+     * @param id the event id
+     * @param info the info to dispatch
+     */
+    public <T> void dispatch(String id, T info)
+    {
+        EventPool.send(this.dispatcher, id, info);
+    }
+
+    /**
+     * Dispatch info to an id with a partition key using a pooled event.
+     *
+     * @param <T> the type of the info
+     * @param id the event id
+     * @param info the info to dispatch
+     * @param key the partition key, or null for none
+     */
+    public <T> void dispatch(String id, T info, Object key)
+    {
+        EventPool.send(this.dispatcher, id, info, key);
+    }
+
+}
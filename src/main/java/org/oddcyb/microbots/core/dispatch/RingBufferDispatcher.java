@@ -0,0 +1,521 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Topic;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * A dispatcher that hands events to a consumer thread through a 
+ * preallocated ring buffer.
+ * <p>
+ * Senders claim a slot in the ring, copy the topic and info into it and
+ * publish it, without allocating or locking. A single consumer thread 
+ * performs the actions for each event in the order they were published,
+ * which keeps every topic's events in order without partitioning them. 
+ * Use a StripedDispatcher to perform events for different keys in 
+ * parallel.
+ * <p>
+ * The WaitStrategy decides how the consumer waits for events and how
+ * senders wait for a free slot when the ring is full, trading CPU for 
+ * latency. An action that sends to a full ring from the consumer thread 
+ * cannot wait for itself to free a slot, so the event is performed at once
+ * instead, as it is whenever the ring has a single producer. Events 
+ * claimed before a shutdown are still performed.
+ */
+public class RingBufferDispatcher implements Dispatcher
+{
+    private static final Logger LOG =
+        Logger.getLogger(RingBufferDispatcher.class.getName());
+
+    /**
+     * System property that provides the default ring's wait strategy.
+     */
+    public static final String WAIT_STRATEGY_PROP = "microbots.ring-wait";
+
+    /**
+     * System property that provides the default ring's size.
+     */
+    public static final String SIZE_PROP = "microbots.ring-size";
+
+    private static final long PARK_NANOS = 1_000;
+
+    private static final RobotThreadFactory CONSUMER_THREADS = 
+        new RobotThreadFactory();
+
+    /**
+     * The number of threads that can send to a ring.
+     */
+    public enum Producers
+    {
+        /**
+         * Only one thread sends, so slots are claimed without a CAS.
+         */
+        SINGLE,
+
+        /**
+         * Any thread can send.
+         */
+        MULTI;
+    }
+
+    /**
+     * How the consumer waits for events and senders wait for free slots.
+     */
+    public enum WaitStrategy
+    {
+        /**
+         * Spin on the CPU, for the lowest latency at the cost of a core.
+         */
+        BUSY_SPIN,
+
+        /**
+         * Yield the CPU between checks.
+         */
+        YIELD,
+
+        /**
+         * Park for a microsecond between checks.
+         */
+        PARK,
+
+        /**
+         * Block on a lock until signalled, for the lowest CPU use.
+         * Interrupts do not stop senders waiting for a free slot, as their
+         * slot has already been claimed.
+         */
+        BLOCKING;
+    }
+
+    /**
+     * Holds the shared ring buffer dispatcher, which is only created and
+     * started when it is first used.
+     */
+    static class Shared
+    {
+        static final RingBufferDispatcher DISPATCHER = 
+            new RingBufferDispatcher(
+                Integer.getInteger(SIZE_PROP, 4096), 
+                Producers.MULTI,
+                WaitStrategy.valueOf(
+                    System.getProperty(WAIT_STRATEGY_PROP, "BLOCKING")));
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final AtomicLong consumed;
+    private final Producers producers;
+    private final WaitStrategy waitStrategy;
+    private final ReentrantLock lock;
+    private final Condition available;
+    private final Condition space;
+    private final AtomicInteger sending;
+    private final Thread consumer;
+    private volatile boolean consumerWaiting;
+    private volatile int producersWaiting;
+    private volatile boolean running;
+
+    /**
+     * Create a ring buffer dispatcher and start its consumer thread.
+     * 
+     * @param size the number of slots, rounded up to a power of two
+     * @param producers the number of threads that can send
+     * @param waitStrategy how to wait for events and free slots
+     */
+    public RingBufferDispatcher(int size, Producers producers,
+                                WaitStrategy waitStrategy)
+    {
+        if ( size < 1 || size > (1 << 30) )
+        {
+            throw new IllegalArgumentException("Invalid ring size: "+size);
+        }
+
+        var capacity = Integer.highestOneBit(size);
+        capacity = (capacity < size) ? capacity << 1 : capacity;
+
+        this.slots = new Slot[capacity];
+        for ( int i=0 ; i<capacity ; i++ )
+        {
+            this.slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for ( int i=0 ; i<capacity ; i++ )
+        {
+            this.published.set(i, -1);
+        }
+        this.claimed = new AtomicLong(-1);
+        this.consumed = new AtomicLong(-1);
+        this.producers = producers;
+        this.waitStrategy = waitStrategy;
+        this.lock = new ReentrantLock();
+        this.available = this.lock.newCondition();
+        this.space = this.lock.newCondition();
+        this.sending = new AtomicInteger(0);
+        this.running = true;
+
+        this.consumer = CONSUMER_THREADS.newThread(this::consume);
+        this.consumer.start();
+    }
+
+    /**
+     * Get the number of slots in the ring.
+     * 
+     * @return the capacity
+     */
+    public int getCapacity()
+    {
+        return this.slots.length;
+    }
+
+    /**
+     * Get the number of events waiting to be consumed.
+     * 
+     * @return the number of events in the ring
+     */
+    public int getDepth()
+    {
+        return (int) Math.max(0, this.claimed.get() - this.consumed.get());
+    }
+
+    /**
+     * Dispatch an event.
+     * Events for ids that nothing subscribes to are not published.
+     * 
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        Topic<Object> topic = EventRegistry.find(event.getId());
+        if ( topic != null )
+        {
+            this.publish(topic, event.getInfo());
+        }
+    }
+
+    /**
+     * Dispatch info to a topic.
+     * 
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        this.publish(topic, info);
+    }
+
+    /**
+     * Stop the consumer once it has performed the published events.
+     */
+    public void shutdown()
+    {
+        this.running = false;
+        this.signalConsumer();
+    }
+
+    private <T> void publish(Topic<T> topic, T info)
+    {
+        if ( Thread.currentThread() == this.consumer )
+        {
+            this.publishFromConsumer(topic, info);
+            return;
+        }
+
+        // Counted while sending, so the consumer does not stop between a 
+        // slot being claimed and published
+        this.sending.incrementAndGet();
+        try
+        {
+            if ( !this.running )
+            {
+                throw new IllegalStateException(
+                    "Dispatcher has been shut down");
+            }
+
+            long sequence;
+            if ( this.producers == Producers.SINGLE )
+            {
+                sequence = this.claimed.get() + 1;
+                this.claimed.lazySet(sequence);
+            }
+            else
+            {
+                sequence = this.claimed.incrementAndGet();
+            }
+
+            this.waitForSpace(sequence - this.slots.length);
+            this.write(sequence, topic, info);
+        }
+        finally
+        {
+            this.sending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Publish an event sent by an action on the consumer thread.
+     * The consumer cannot wait for itself to free a slot, so it only claims
+     * a slot that is already free, and otherwise performs the event itself.
+     */
+    private <T> void publishFromConsumer(Topic<T> topic, T info)
+    {
+        if ( this.producers == Producers.MULTI )
+        {
+            long sequence;
+            while ( (sequence = this.claimed.get() + 1) - this.slots.length <=
+                    this.consumed.get() )
+            {
+                if ( this.claimed.compareAndSet(sequence - 1, sequence) )
+                {
+                    this.write(sequence, topic, info);
+                    return;
+                }
+            }
+        }
+
+        topic.send(info);
+    }
+
+    private <T> void write(long sequence, Topic<T> topic, T info)
+    {
+        var index = (int) sequence & this.mask;
+        var slot = this.slots[index];
+        slot.topic = topic;
+        slot.info = info;
+        this.published.set(index, sequence);
+
+        if ( this.consumerWaiting )
+        {
+            this.signalConsumer();
+        }
+    }
+
+    private void consume()
+    {
+        var next = this.consumed.get() + 1;
+
+        while ( true )
+        {
+            if ( !this.isPublished(next) )
+            {
+                // Stop once shut down and every claimed slot is performed
+                if ( !this.running && this.sending.get() == 0 &&
+                     next > this.claimed.get() )
+                {
+                    return;
+                }
+
+                this.waitFor(next);
+                continue;
+            }
+
+            var slot = this.slots[(int) next & this.mask];
+            var topic = slot.topic;
+            var info = slot.info;
+            slot.topic = null;
+            slot.info = null;
+            this.consumed.lazySet(next);
+            next++;
+
+            if ( this.producersWaiting > 0 )
+            {
+                this.signalProducers();
+            }
+
+            try
+            {
+                send(topic, info);
+            }
+            catch ( Throwable t )
+            {
+                // Keep consuming, or producers waiting for space would hang
+                LOG.log(Level.WARNING, "Action failed", t);
+            }
+        }
+    }
+
+    /**
+     * Wait for the consumer to free a slot.
+     *
+     * @param wrap the sequence the consumer must have consumed
+     */
+    private void waitForSpace(long wrap)
+    {
+        while ( wrap > this.consumed.get() )
+        {
+            switch ( this.waitStrategy )
+            {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case PARK:
+                    LockSupport.parkNanos(PARK_NANOS);
+                    break;
+                case BLOCKING:
+                default:
+                    this.awaitSpace(wrap);
+                    break;
+            }
+        }
+    }
+
+    private void awaitSpace(long wrap)
+    {
+        var interrupted = false;
+        this.lock.lock();
+        try
+        {
+            this.producersWaiting++;
+            while ( wrap > this.consumed.get() )
+            {
+                try
+                {
+                    this.space.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                catch ( InterruptedException ie )
+                {
+                    // The slot is claimed and must be published
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            this.producersWaiting--;
+            this.lock.unlock();
+
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isPublished(long sequence)
+    {
+        return this.published.get((int) sequence & this.mask) == sequence;
+    }
+
+    private void waitFor(long sequence)
+    {
+        switch ( this.waitStrategy )
+        {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                return;
+            case YIELD:
+                Thread.yield();
+                return;
+            case PARK:
+                LockSupport.parkNanos(PARK_NANOS);
+                return;
+            case BLOCKING:
+            default:
+                break;
+        }
+
+        this.lock.lock();
+        try
+        {
+            this.consumerWaiting = true;
+            if ( this.running && !this.isPublished(sequence) )
+            {
+                this.available.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            // The consumer only stops on shutdown, and keeping the interrupt
+            // would make every later wait return at once
+            LOG.log(Level.FINE, "Ring consumer interrupted");
+        }
+        finally
+        {
+            this.consumerWaiting = false;
+            this.lock.unlock();
+        }
+    }
+
+    private void signalConsumer()
+    {
+        this.lock.lock();
+        try
+        {
+            this.available.signal();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    private void signalProducers()
+    {
+        this.lock.lock();
+        try
+        {
+            this.space.signalAll();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Send info taken from a slot to its topic.
+     * A slot is only written with info for its topic, so the cast is safe.
+     *
+     * @param <T> the type of info sent to the topic
+     * @param topic the topic
+     * @param info the info
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void send(Topic<T> topic, Object info)
+    {
+        topic.send((T) info);
+    }
+
+    /**
+     * A slot in the ring.
+     */
+    private static class Slot
+    {
+        private Topic<?> topic;
+        private Object info;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.dispatch;
+
+import java.util.function.Function;
+
+import org.oddcyb.microbots.core.dispatch.RingBufferDispatcher.Producers;
+import org.oddcyb.microbots.core.dispatch.RingBufferDispatcher.WaitStrategy;
+import org.oddcyb.microbots.core.event.Event;
+import org.oddcyb.microbots.core.event.EventRegistry;
+import org.oddcyb.microbots.core.event.Keyed;
+import org.oddcyb.microbots.core.event.Topic;
+
+/**
+ * A dispatcher that hashes each event's partition key to one of a number of
+ * lanes. Each lane performs its events in order on its own thread, so events
+ * with the same key are performed strictly in order while events with
+ * different keys can be performed in parallel.
+ * <p>
+ * An event's key is its {@link Event#getKey()}, or for info sent to a topic 
+ * the result of the dispatcher's key function. The shared dispatcher uses
+ * {@link #KEYED}, which takes the key from info that implements 
+ * {@link Keyed}. Events without a key are partitioned by their event id, 
+ * which keeps each topic in order.
+ */
+public class StripedDispatcher implements Dispatcher
+{
+    /**
+     * System property that provides the default number of lanes.
+     */
+    public static final String LANES_PROP = "microbots.stripes";
+
+    /**
+     * A key function that takes the key from {@link Keyed} info.
+     */
+    public static final Function<Object,?> KEYED = 
+        (info) -> (info instanceof Keyed) ? ((Keyed) info).getKey() : null;
+
+    private static final int LANE_SIZE = 1024;
+
+    /**
+     * Holds the shared striped dispatcher, which is only created and started
+     * when it is first used.
+     */
+    static class Shared
+    {
+        static final StripedDispatcher DISPATCHER = new StripedDispatcher(
+            Integer.getInteger(LANES_PROP, 
+                               Runtime.getRuntime().availableProcessors()),
+            KEYED);
+    }
+
+    private final RingBufferDispatcher[] lanes;
+    private final Function<Object,?> keyOf;
+
+    /**
+     * Create a striped dispatcher and start its lanes.
+     * 
+     * @param lanes the number of lanes
+     * @param keyOf gets the key of info sent to a topic, returning null if
+     * the info has no key
+     */
+    public StripedDispatcher(int lanes, Function<Object,?> keyOf)
+    {
+        if ( lanes < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Number of lanes must be positive: "+lanes);
+        }
+
+        this.lanes = new RingBufferDispatcher[lanes];
+        for ( int i=0 ; i<lanes ; i++ )
+        {
+            this.lanes[i] = new RingBufferDispatcher(
+                LANE_SIZE, Producers.MULTI, WaitStrategy.BLOCKING);
+        }
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * Dispatch an event on the lane for its key.
+     * Events for ids that nothing subscribes to are not dispatched.
+     * 
+     * @param event the event to dispatch
+     */
+    @Override
+    public void dispatch(Event<?> event)
+    {
+        var topic = EventRegistry.find(event.getId());
+        if ( topic == null )
+        {
+            return;
+        }
+
+        var key = event.getKey();
+        this.lane( (key == null) ? event.getId() : key )
+            .dispatch(topic, event.getInfo());
+    }
+
+    /**
+     * Dispatch info to a topic on the lane for its key.
+     * 
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        this.dispatch(topic, info, this.keyOf.apply(info));
+    }
+
+    /**
+     * Dispatch info to a topic on the lane for a key.
+     * 
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     * @param key the partition key, or null to partition by the topic's id
+     */
+    public <T> void dispatch(Topic<T> topic, T info, Object key)
+    {
+        this.lane( (key == null) ? topic.getId() : key ).dispatch(topic, info);
+    }
+
+    /**
+     * Stop the lanes once they have performed their events.
+     */
+    public void shutdown()
+    {
+        for ( var lane : this.lanes )
+        {
+            lane.shutdown();
+        }
+    }
+
+    private RingBufferDispatcher lane(Object key)
+    {
+        var hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return this.lanes[Math.floorMod(hash, this.lanes.length)];
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compact binary event codec.
+ * <p>
+ * An event is encoded as its id followed by a one byte tag for the type of
+ * its info and the info's value. Strings, numbers, booleans, byte arrays and
+ * paths have their own tags. Other Serializable info is encoded with Java
+ * serialization, which can be disabled when the bytes are not trusted.
+ * Lengths are encoded as variable length ints, and the bytes of event ids
+ * are cached as there are few of them.
+ */
+public class BinaryEventCodec implements EventCodec
+{
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte BYTES = 6;
+    private static final byte PATH = 7;
+    private static final byte SERIALIZED = 8;
+
+    private final boolean serialization;
+    private final ConcurrentMap<String,byte[]> ids;
+
+    /**
+     * Create a codec that uses Java serialization for other info.
+     */
+    public BinaryEventCodec()
+    {
+        this(true);
+    }
+
+    /**
+     * Create a codec.
+     *
+     * @param serialization true to use Java serialization for info without
+     * its own tag, false to reject such info
+     */
+    public BinaryEventCodec(boolean serialization)
+    {
+        this.serialization = serialization;
+        this.ids = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Encode an event at the position of a buffer.
+     *
+     * @param id the event id
+     * @param info the event info
+     * @param buffer the buffer to encode into
+     */
+    @Override
+    public void encode(String id, Object info, ByteBuffer buffer)
+    {
+        var idBytes = this.ids.get(id);
+        if ( idBytes == null )
+        {
+            idBytes = this.ids.computeIfAbsent(id,
+                i -> i.getBytes(StandardCharsets.UTF_8));
+        }
+        putBytes(buffer, idBytes);
+
+        if ( info == null )
+        {
+            buffer.put(NULL);
+        }
+        else if ( info instanceof String )
+        {
+            buffer.put(STRING);
+            putBytes(buffer, ((String) info).getBytes(StandardCharsets.UTF_8));
+        }
+        else if ( info instanceof Integer )
+        {
+            buffer.put(INTEGER);
+            buffer.putInt((Integer) info);
+        }
+        else if ( info instanceof Long )
+        {
+            buffer.put(LONG);
+            buffer.putLong((Long) info);
+        }
+        else if ( info instanceof Double )
+        {
+            buffer.put(DOUBLE);
+            buffer.putDouble((Double) info);
+        }
+        else if ( info instanceof Boolean )
+        {
+            buffer.put(BOOLEAN);
+            buffer.put((byte) (((Boolean) info) ? 1 : 0));
+        }
+        else if ( info instanceof byte[] )
+        {
+            buffer.put(BYTES);
+            putBytes(buffer, (byte[]) info);
+        }
+        else if ( info instanceof Path )
+        {
+            buffer.put(PATH);
+            putBytes(buffer,
+                     info.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        else if ( this.serialization && info instanceof Serializable )
+        {
+            buffer.put(SERIALIZED);
+            putBytes(buffer, serialize(info));
+        }
+        else
+        {
+            throw new IllegalArgumentException(
+                "Cannot encode info of "+info.getClass());
+        }
+    }
+
+    /**
+     * Decode an event from the position of a buffer.
+     *
+     * @param buffer the buffer to decode from
+     * @return the event
+     */
+    @Override
+    public Event<?> decode(ByteBuffer buffer)
+    {
+        var id = new String(getBytes(buffer), StandardCharsets.UTF_8);
+        var tag = buffer.get();
+
+        switch ( tag )
+        {
+            case NULL:
+                return new Event<>(id, null);
+            case STRING:
+                return new Event<>(id,
+                    new String(getBytes(buffer), StandardCharsets.UTF_8));
+            case INTEGER:
+                return new Event<>(id, buffer.getInt());
+            case LONG:
+                return new Event<>(id, buffer.getLong());
+            case DOUBLE:
+                return new Event<>(id, buffer.getDouble());
+            case BOOLEAN:
+                return new Event<>(id, buffer.get() != 0);
+            case BYTES:
+                return new Event<>(id, getBytes(buffer));
+            case PATH:
+                return new Event<>(id, Paths.get(
+                    new String(getBytes(buffer), StandardCharsets.UTF_8)));
+            case SERIALIZED:
+                if ( !this.serialization )
+                {
+                    throw new IllegalArgumentException(
+                        "Serialized info is not accepted");
+                }
+                return new Event<>(id, deserialize(getBytes(buffer)));
+            default:
+                throw new IllegalArgumentException("Unknown info tag "+tag);
+        }
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes)
+    {
+        var length = bytes.length;
+        while ( (length & ~0x7F) != 0 )
+        {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer)
+    {
+        var length = 0;
+        for ( int shift=0 ; ; shift+=7 )
+        {
+            var b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if ( b >= 0 )
+            {
+                break;
+            }
+            if ( shift > 28 )
+            {
+                throw new IllegalArgumentException("Invalid length");
+            }
+        }
+
+        if ( length < 0 || length > buffer.remaining() )
+        {
+            throw new IllegalArgumentException("Invalid length "+length);
+        }
+
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] serialize(Object info)
+    {
+        var bytes = new ByteArrayOutputStream();
+        try ( var out = new ObjectOutputStream(bytes) )
+        {
+            out.writeObject(info);
+        }
+        catch ( IOException ioe )
+        {
+            throw new IllegalArgumentException(
+                "Cannot serialize info of "+info.getClass(), ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes)
+    {
+        try ( var in = new ObjectInputStream(new ByteArrayInputStream(bytes)) )
+        {
+            return in.readObject();
+        }
+        catch ( IOException | ClassNotFoundException e )
+        {
+            throw new IllegalArgumentException("Cannot deserialize info", e);
+        }
+    }
+
+}
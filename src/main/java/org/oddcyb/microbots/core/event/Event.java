@@ -15,16 +15,18 @@
  */
 package org.oddcyb.microbots.core.event;
 
+import org.oddcyb.microbots.core.dispatch.Dispatcher;
 import org.oddcyb.microbots.core.dispatch.Dispatchers;
 
 /**
  * An event that can occur.
  * @param <T> the type of information provided with this event
  */
-public class Event<T> 
+public class Event<T> implements Keyed
 {
     private final String id;
     private final T info;
+    private final Object key;
     
     /**
      * Create an event for the provide info.
@@ -32,9 +34,24 @@ public class Event<T>
      * @param info the info for the event
      */
     public Event(String id, T info)
+    {
+        this(id, info, null);
+    }
+    
+    /**
+     * Create an event for the provided info with a partition key.
+     * Dispatchers that partition events, such as the striped dispatcher,
+     * keep events with equal keys in order.
+     * 
+     * @param id the event id
+     * @param info the info for the event
+     * @param key the partition key, or null for none
+     */
+    public Event(String id, T info, Object key)
     {
         this.id = id;
         this.info = info;
+        this.key = key;
     }
     
     /**
@@ -56,6 +73,30 @@ public class Event<T>
         return this.id;
     }
   
+    /**
+     * Get the partition key for this event.
+     * 
+     * @return the key, or null if the event has no key
+     */
+    @Override
+    public Object getKey()
+    {
+        return this.key;
+    }
+    
+    /**
+     * Get a copy of this event that can be kept after it has been dispatched.
+     * Events are immutable, so this returns the event itself unless it is a 
+     * pooled event that will be reused.
+     * 
+     * @return an event that can be kept
+     * @see EventPool
+     */
+    public Event<T> copy()
+    {
+        return this;
+    }
+    
     /**
      * Send the event.
      * Multiple calls to this method will send the event multiple times.
@@ -65,4 +106,15 @@ public class Event<T>
         Dispatchers.EVENT.dispatcher().dispatch(this);
     }
     
+    /**
+     * Send the event using the provided dispatcher.
+     * Multiple calls to this method will send the event multiple times.
+     * 
+     * @param dispatcher the dispatcher to send the event with
+     */
+    public final void send(Dispatcher dispatcher)
+    {
+        dispatcher.dispatch(this);
+    }
+    
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes events to, and decodes events from, bytes.
+ * The partition key of an event is not encoded.
+ */
+public interface EventCodec
+{
+
+    /**
+     * Encode an event at the position of a buffer.
+     * The buffer's position is advanced past the encoded event.
+     *
+     * @param id the event id
+     * @param info the event info
+     * @param buffer the buffer to encode into
+     * @throws java.nio.BufferOverflowException if the event does not fit in
+     * the buffer, the buffer's position is then undefined
+     * @throws IllegalArgumentException if the info cannot be encoded
+     */
+    public void encode(String id, Object info, ByteBuffer buffer);
+
+    /**
+     * Decode an event from the position of a buffer.
+     * The buffer's position is advanced past the decoded event.
+     *
+     * @param buffer the buffer to decode from
+     * @return the event
+     * @throws IllegalArgumentException if the bytes are not an event
+     */
+    public Event<?> decode(ByteBuffer buffer);
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of events, held in memory-mapped segment files.
+ * <p>
+ * Each event is written to the current segment as a record of its length,
+ * a CRC32C of its bytes and the bytes from an EventCodec. Appending copies
+ * the event into the mapped segment without a system call, and the segment
+ * is only written to disk when the journal is synced, when it is full or by
+ * the operating system. When a segment is full a new one is started, and the
+ * oldest segments are deleted when there are more than the maximum.
+ * <p>
+ * Replaying reads the records of each segment in order. A record with a
+ * bad length or CRC, such as one torn by a crash, ends its segment.
+ * <p>
+ * Records are found by their position in the journal, which increases as
+ * events are appended. The journal keeps a checkpoint position, of the 
+ * first event that has not been handled, in a memory-mapped file that is
+ * written to disk when the journal is synced. Replaying from the checkpoint
+ * skips the events already handled before a restart.
+ */
+public class EventJournal implements AutoCloseable
+{
+    private static final Logger LOG =
+        Logger.getLogger(EventJournal.class.getName());
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * The size of a record's length and CRC.
+     */
+    private static final int HEADER = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final EventCodec codec;
+    private final Deque<Path> segments;
+    private final MappedByteBuffer checkpoint;
+    private long segmentIndex;
+    private MappedByteBuffer current;
+    private int lastRecord;
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * Open a journal, creating the directory if it does not exist.
+     * Appending continues after the last valid record of the last segment.
+     *
+     * @param directory the directory of the segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxSegments the maximum number of segment files to keep
+     * @param codec the codec to encode events with
+     * @throws IOException if the journal cannot be opened
+     */
+    public EventJournal(Path directory, int segmentSize, int maxSegments,
+                        EventCodec codec)
+        throws IOException
+    {
+        if ( segmentSize <= HEADER || maxSegments < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Invalid segment size "+segmentSize+
+                " or maximum segments "+maxSegments);
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.codec = codec;
+
+        try ( var files = Files.list(directory) )
+        {
+            this.segments = files
+                .filter( f -> f.getFileName().toString().startsWith(PREFIX) )
+                .filter( f -> f.getFileName().toString().endsWith(SUFFIX) )
+                .sorted()
+                .collect(Collectors.toCollection(ArrayDeque::new));
+        }
+
+        if ( this.segments.isEmpty() )
+        {
+            this.segmentIndex = -1;
+            this.nextSegment();
+        }
+        else
+        {
+            var last = this.segments.getLast();
+            this.segmentIndex = indexOf(last);
+            this.current = map(last, FileChannel.MapMode.READ_WRITE,
+                               this.segmentSize);
+            this.current.position(scan(this.current, 0, null));
+        }
+
+        this.checkpoint = map(this.directory.resolve(CHECKPOINT),
+                              FileChannel.MapMode.READ_WRITE, Long.BYTES);
+    }
+
+    /**
+     * Append an event to the journal.
+     *
+     * @param id the event id
+     * @param info the event info
+     * @return the position of the event in the journal
+     * @throws IllegalArgumentException if the info cannot be encoded or the
+     * event does not fit in a segment
+     * @throws UncheckedIOException if a new segment cannot be started
+     */
+    public synchronized long append(String id, Object info)
+    {
+        if ( this.closed )
+        {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        if ( !this.tryAppend(id, info) )
+        {
+            if ( this.current.position() == 0 )
+            {
+                throw new IllegalArgumentException(
+                    "Event "+id+" is larger than a segment");
+            }
+
+            this.nextSegment();
+            if ( !this.tryAppend(id, info) )
+            {
+                throw new IllegalArgumentException(
+                    "Event "+id+" is larger than a segment");
+            }
+        }
+
+        this.dirty = true;
+        return position(this.segmentIndex, this.lastRecord);
+    }
+
+    /**
+     * Get the position the next event will be appended at.
+     *
+     * @return the end of the journal
+     */
+    public synchronized long position()
+    {
+        return position(this.segmentIndex, this.current.position());
+    }
+
+    /**
+     * Get the checkpoint, the position of the first event not yet handled.
+     *
+     * @return the checkpoint, 0 if none has been set
+     */
+    public synchronized long getCheckpoint()
+    {
+        return this.checkpoint.getLong(0);
+    }
+
+    /**
+     * Set the checkpoint, the position of the first event not yet handled.
+     * The checkpoint is written to disk when the journal is synced, and is
+     * not written once the journal is closed.
+     *
+     * @param position the position, e.g. the end of the journal once every
+     * event has been handled
+     */
+    public synchronized void setCheckpoint(long position)
+    {
+        this.checkpoint.putLong(0, position);
+        this.dirty = true;
+    }
+
+    /**
+     * Write the appended events to disk.
+     * Events can still be appended while the journal is syncing.
+     */
+    public void sync()
+    {
+        MappedByteBuffer buffer;
+        synchronized ( this )
+        {
+            if ( !this.dirty || this.closed )
+            {
+                return;
+            }
+            buffer = this.current;
+            this.dirty = false;
+        }
+
+        buffer.force();
+        this.checkpoint.force();
+    }
+
+    /**
+     * Replay the events in the journal, oldest first.
+     * Events appended while replaying may not be replayed.
+     *
+     * @param consumer the consumer of the events
+     * @throws IOException if a segment cannot be read
+     */
+    public void replay(Consumer<? super Event<?>> consumer) throws IOException
+    {
+        this.replay(0, (event, next) -> consumer.accept(event));
+    }
+
+    /**
+     * Replay the events in the journal from a position, oldest first.
+     * Events appended while replaying may not be replayed.
+     *
+     * @param from the position to replay from, e.g. the checkpoint
+     * @param consumer the consumer of each event and the position after it
+     * @throws IOException if a segment cannot be read
+     */
+    public void replay(long from, BiConsumer<? super Event<?>,Long> consumer) 
+        throws IOException
+    {
+        ArrayList<Path> files;
+        synchronized ( this )
+        {
+            files = new ArrayList<>(this.segments);
+        }
+
+        var fromSegment = from >>> 32;
+        for ( var file : files )
+        {
+            var index = indexOf(file);
+            if ( index < fromSegment || !Files.exists(file) )
+            {
+                // Before the position, or deleted as an old segment after 
+                // replay started
+                continue;
+            }
+
+            var buffer = map(file, FileChannel.MapMode.READ_ONLY,
+                             (int) Math.min(Files.size(file),
+                                            this.segmentSize));
+            var start = (index == fromSegment) ? (int) from : 0;
+            scan(buffer, start, (event, end) -> 
+                consumer.accept(event, position(index, end)));
+        }
+    }
+
+    /**
+     * Sync and close the journal.
+     */
+    @Override
+    public void close()
+    {
+        this.sync();
+        synchronized ( this )
+        {
+            this.closed = true;
+        }
+    }
+
+    private boolean tryAppend(String id, Object info)
+    {
+        var buffer = this.current;
+        var start = buffer.position();
+        if ( buffer.remaining() <= HEADER )
+        {
+            return false;
+        }
+
+        try
+        {
+            buffer.position(start + HEADER);
+            this.codec.encode(id, info, buffer);
+        }
+        catch ( BufferOverflowException | IllegalArgumentException e )
+        {
+            // Clear what was encoded, so it cannot be read as a record
+            var end = (e instanceof BufferOverflowException) ?
+                buffer.limit() : buffer.position();
+            for ( int i=start ; i<end ; i++ )
+            {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.position(start);
+
+            if ( e instanceof IllegalArgumentException )
+            {
+                throw (IllegalArgumentException) e;
+            }
+            return false;
+        }
+
+        var length = buffer.position() - start - HEADER;
+        buffer.putInt(start + 4, crc(buffer, start + HEADER, length));
+        buffer.putInt(start, length);
+        this.lastRecord = start;
+        return true;
+    }
+
+    /**
+     * Scan the records of a segment.
+     *
+     * @param buffer the segment
+     * @param start the offset of the first record to scan
+     * @param consumer the consumer of the events and the offset after each,
+     * or null to only scan
+     * @return the offset after the last valid record
+     */
+    private int scan(ByteBuffer buffer, int start, 
+                     BiConsumer<? super Event<?>,Integer> consumer)
+    {
+        var position = start;
+        var limit = buffer.limit();
+
+        while ( position + HEADER <= limit )
+        {
+            var length = buffer.getInt(position);
+            if ( length <= 0 || length > limit - position - HEADER ||
+                 buffer.getInt(position + 4) !=
+                     crc(buffer, position + HEADER, length) )
+            {
+                break;
+            }
+
+            if ( consumer != null )
+            {
+                var record = buffer.duplicate();
+                record.position(position + HEADER);
+                record.limit(position + HEADER + length);
+
+                Event<?> event = null;
+                try
+                {
+                    event = this.codec.decode(record);
+                }
+                catch ( RuntimeException e )
+                {
+                    LOG.log(Level.WARNING, "Unable to decode event", e);
+                }
+
+                if ( event != null )
+                {
+                    consumer.accept(event, position + HEADER + length);
+                }
+            }
+
+            position += HEADER + length;
+        }
+
+        return position;
+    }
+
+    private void nextSegment()
+    {
+        if ( this.current != null )
+        {
+            this.current.force();
+        }
+
+        try
+        {
+            this.segmentIndex++;
+            var file = this.directory.resolve(
+                String.format("%s%016d%s", PREFIX, this.segmentIndex, SUFFIX));
+            this.current = map(file, FileChannel.MapMode.READ_WRITE,
+                               this.segmentSize);
+            this.segments.addLast(file);
+        }
+        catch ( IOException ioe )
+        {
+            throw new UncheckedIOException("Unable to start segment", ioe);
+        }
+
+        while ( this.segments.size() > this.maxSegments )
+        {
+            var old = this.segments.removeFirst();
+            try
+            {
+                Files.deleteIfExists(old);
+            }
+            catch ( IOException ioe )
+            {
+                LOG.log(Level.WARNING, "Unable to delete segment "+old, ioe);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode,
+                                        int size)
+        throws IOException
+    {
+        var options = (mode == FileChannel.MapMode.READ_ONLY) ?
+            new StandardOpenOption[] { StandardOpenOption.READ } :
+            new StandardOpenOption[] { StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.CREATE };
+
+        // The mapping stays valid after the channel is closed
+        try ( var channel = FileChannel.open(file, options) )
+        {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private static int crc(ByteBuffer buffer, int position, int length)
+    {
+        var bytes = buffer.duplicate();
+        bytes.position(position);
+        bytes.limit(position + length);
+
+        var crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Get the position of an offset in a segment.
+     * The segment index is in the high bits, so positions increase through 
+     * the journal.
+     */
+    private static long position(long segmentIndex, int offset)
+    {
+        return (segmentIndex << 32) | offset;
+    }
+
+    private static long indexOf(Path segment)
+    {
+        var name = segment.getFileName().toString();
+        return Long.parseLong(
+            name.substring(PREFIX.length(), name.length()-SUFFIX.length()));
+    }
+
+}
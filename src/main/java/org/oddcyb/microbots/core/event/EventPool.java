@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import org.oddcyb.microbots.core.dispatch.Dispatcher;
+
+/**
+ * A per-thread pool of reusable events.
+ * <p>
+ * A pooled event is only valid while it is being dispatched. Actions are only
+ * given the info of an event, never the event itself, so only dispatchers
+ * can see a pooled event. A dispatcher that needs an event after its
+ * dispatch method returns, e.g. to queue it, must keep {@link Event#copy()}
+ * instead. Reading a pooled event after it has been recycled throws an
+ * IllegalStateException.
+ */
+public class EventPool
+{
+    /**
+     * The number of nested sends on one thread that can reuse events.
+     */
+    private static final int MAX_DEPTH = 8;
+
+    private static final ThreadLocal<EventPool> POOLS = 
+        ThreadLocal.withInitial(EventPool::new);
+
+    private final PooledEvent<Object>[] events;
+    private int depth;
+
+    @SuppressWarnings("unchecked")
+    private EventPool()
+    {
+        // Pooled events carry any type of info, so hold them as Object
+        this.events = (PooledEvent<Object>[]) new PooledEvent<?>[MAX_DEPTH];
+    }
+
+    /**
+     * Send info to an id using a pooled event.
+     * The event is recycled when the dispatcher returns.
+     * 
+     * @param <T> the type of the info
+     * @param dispatcher the dispatcher to send the event with
+     * @param id the event id
+     * @param info the info to send
+     */
+    public static <T> void send(Dispatcher dispatcher, String id, T info)
+    {
+        send(dispatcher, id, info, null);
+    }
+
+    /**
+     * Send info to an id with a partition key using a pooled event.
+     * The event is recycled when the dispatcher returns.
+     * 
+     * @param <T> the type of the info
+     * @param dispatcher the dispatcher to send the event with
+     * @param id the event id
+     * @param info the info to send
+     * @param key the partition key, or null for none
+     */
+    public static <T> void send(Dispatcher dispatcher, String id, T info,
+                                Object key)
+    {
+        var pool = POOLS.get();
+
+        if ( pool.depth == MAX_DEPTH )
+        {
+            // Sends are nested too deeply, fall back to a new event
+            dispatcher.dispatch(new Event<>(id, info, key));
+            return;
+        }
+
+        var event = pool.events[pool.depth];
+        if ( event == null )
+        {
+            event = new PooledEvent<>();
+            pool.events[pool.depth] = event;
+        }
+
+        pool.depth++;
+        try
+        {
+            event.set(id, info, key);
+            dispatcher.dispatch(event);
+        }
+        finally
+        {
+            event.clear();
+            pool.depth--;
+        }
+    }
+
+    /**
+     * An event that is reused by the pool.
+     * 
+     * @param <T> the type of information provided with this event
+     */
+    private static class PooledEvent<T> extends Event<T>
+    {
+        private String id;
+        private T info;
+        private Object key;
+        private boolean inUse;
+
+        private PooledEvent()
+        {
+            super(null, null);
+        }
+
+        private void set(String id, T info, Object key)
+        {
+            this.id = id;
+            this.info = info;
+            this.key = key;
+            this.inUse = true;
+        }
+
+        private void clear()
+        {
+            this.id = null;
+            this.info = null;
+            this.key = null;
+            this.inUse = false;
+        }
+
+        private void checkInUse()
+        {
+            if ( !this.inUse )
+            {
+                throw new IllegalStateException(
+                    "Event has been recycled, dispatchers must copy events "+
+                    "they keep");
+            }
+        }
+
+        @Override
+        public T getInfo()
+        {
+            this.checkInUse();
+            return this.info;
+        }
+
+        @Override
+        public String getId()
+        {
+            this.checkInUse();
+            return this.id;
+        }
+
+        @Override
+        public Object getKey()
+        {
+            this.checkInUse();
+            return this.key;
+        }
+
+        @Override
+        public Event<T> copy()
+        {
+            return new Event<>(this.getId(), this.getInfo(), this.getKey());
+        }
+    }
+
+}
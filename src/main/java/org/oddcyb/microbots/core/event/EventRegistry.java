@@ -16,22 +16,36 @@
 package org.oddcyb.microbots.core.event;
 
 import org.oddcyb.microbots.core.Reactor;
-import java.util.Queue;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import org.oddcyb.microbots.Action;
 import org.oddcyb.microbots.core.dispatch.Dispatcher;
 
 /**
  * A registry for event subscribers.
+ * Event ids can be hierarchical, with segments separated by '.'. Actions can
+ * be registered with a wildcard pattern, where a '*' segment matches one
+ * segment and a '#' segment matches zero or more, e.g. "dns.*" or "dns.#".
+ * Pattern subscribers are added to each matching topic when the pattern or 
+ * topic is created, so sending an event does not match patterns.
+ * <p>
+ * Topics are only created for ids that something subscribes to, either
+ * directly or through a pattern, and are dropped again when their last 
+ * subscriber is unregistered. Sending to an id without subscribers does 
+ * nothing. A topic handed out by {@link #topic(String)} is held and kept
+ * for as long as the registry, since its holder may send to it later.
  * TODO - Refactor away the singleton
  */
 public class EventRegistry implements Dispatcher, Reactor
 {   
     private static final EventRegistry REGISTRY = new EventRegistry();
     
-    private final ConcurrentMap<String,Queue<Action>> register;
+    private final ConcurrentMap<String,Topic<?>> register;
+    private final PatternTrie patterns;
+    private volatile int patternCount;
     
     /**
      * Create an EventRegistry.
@@ -39,6 +53,7 @@ public class EventRegistry implements Dispatcher, Reactor
     private EventRegistry()
     {
         this.register = new ConcurrentHashMap<>();
+        this.patterns = new PatternTrie();
     }
     
     /**
@@ -46,12 +61,202 @@ public class EventRegistry implements Dispatcher, Reactor
      * 
      * @param object the object to react to
      * @param action the action to take
+     * @return the subscription for the action
      */
     @Override
-    public void on(String id, Action action)
+    public Subscription on(String id, Action action)
     {
-        this.register.putIfAbsent(id, getEmptyQueue());
-        this.register.get(id).add(action);
+        var subscriber = new Subscriber<>(id, untyped(action));
+        return PatternTrie.isPattern(id) ?
+            this.subscribePattern(id, subscriber) :
+            this.subscribeTopic(id, subscriber);
+    }
+    
+    /**
+     * Get the topic for an id, creating it if needed.
+     * A new topic is given the subscribers of all matching patterns.
+     * Must be called holding the patterns lock, so the topic is not dropped
+     * before the caller subscribes to or holds it.
+     * 
+     * @param id the event id
+     * @return the topic
+     */
+    private Topic<?> topicFor(String id)
+    {
+        return this.register.computeIfAbsent(id, (i) -> {
+            var created = new Topic<>(i);
+            var matched = Collections.newSetFromMap(
+                new IdentityHashMap<Subscriber<Object>,Boolean>());
+            this.patterns.match(i, matched);
+            matched.forEach(created::add);
+            return created;
+        });
+    }
+
+    /**
+     * Get the topic for an id if anything subscribes to it.
+     * A topic is only created if a pattern matches the id.
+     * 
+     * @param id the event id
+     * @return the topic, or null if nothing subscribes to the id
+     */
+    private Topic<?> existing(String id)
+    {
+        var topic = this.register.get(id);
+        if ( topic != null || this.patternCount == 0 )
+        {
+            return topic;
+        }
+
+        synchronized ( this.patterns )
+        {
+            topic = this.register.get(id);
+            if ( topic != null )
+            {
+                return topic;
+            }
+
+            var matched = Collections.newSetFromMap(
+                new IdentityHashMap<Subscriber<Object>,Boolean>());
+            this.patterns.match(id, matched);
+            return matched.isEmpty() ? null : this.topicFor(id);
+        }
+    }
+
+    /**
+     * Get the topic for an id, creating it if needed, and hold it so it is
+     * never dropped.
+     * 
+     * @param id the event id
+     * @return the topic
+     */
+    private Topic<?> hold(String id)
+    {
+        var topic = this.register.get(id);
+        if ( topic != null && topic.isHeld() )
+        {
+            return topic;
+        }
+
+        synchronized ( this.patterns )
+        {
+            topic = this.topicFor(id);
+            topic.hold();
+            return topic;
+        }
+    }
+
+    /**
+     * Subscribe to the topic for an id.
+     * 
+     * @param id the event id
+     * @param subscriber the subscriber
+     * @return the subscription for the subscriber
+     */
+    private Subscription subscribeTopic(String id, 
+                                        Subscriber<Object> subscriber)
+    {
+        synchronized ( this.patterns )
+        {
+            this.topicFor(id).add(subscriber);
+        }
+
+        return new Subscription(id, subscriber, 
+                                () -> this.unsubscribeTopic(id, subscriber));
+    }
+
+    /**
+     * Unsubscribe from the topic for an id, dropping the topic if it has no
+     * subscribers left.
+     * 
+     * @param id the event id
+     * @param subscriber the subscriber
+     * @return true if the subscriber was removed
+     */
+    private boolean unsubscribeTopic(String id, Subscriber<?> subscriber)
+    {
+        synchronized ( this.patterns )
+        {
+            var topic = this.register.get(id);
+            if ( topic == null || !topic.remove(subscriber) )
+            {
+                return false;
+            }
+
+            this.dropIfEmpty(topic);
+            return true;
+        }
+    }
+
+    /**
+     * Drop a topic that has no subscribers and is not held.
+     * Must be called holding the patterns lock.
+     * 
+     * @param topic the topic
+     */
+    private void dropIfEmpty(Topic<?> topic)
+    {
+        if ( topic.isEmpty() && !topic.isHeld() && 
+             this.register.remove(topic.getId(), topic) )
+        {
+            topic.close();
+        }
+    }
+
+    /**
+     * Subscribe to all topics matching a pattern.
+     * 
+     * @param pattern the wildcard pattern
+     * @param subscriber the subscriber
+     * @return the subscription for the subscriber
+     */
+    private Subscription subscribePattern(String pattern, 
+                                          Subscriber<Object> subscriber)
+    {
+        synchronized ( this.patterns )
+        {
+            this.patterns.add(pattern, subscriber);
+            this.patternCount++;
+            this.register.forEach( (id, topic) -> {
+                if ( PatternTrie.matches(pattern, id) )
+                {
+                    topic.add(subscriber);
+                }
+            });
+        }
+
+        return new Subscription(pattern, subscriber, 
+                                () -> this.unsubscribePattern(pattern, 
+                                                              subscriber));
+    }
+
+    /**
+     * Unsubscribe from all topics matching a pattern.
+     * 
+     * @param pattern the wildcard pattern
+     * @param subscriber the subscriber
+     * @return true if the subscriber was removed
+     */
+    private boolean unsubscribePattern(String pattern, 
+                                       Subscriber<Object> subscriber)
+    {
+        synchronized ( this.patterns )
+        {
+            if ( !this.patterns.remove(pattern, subscriber) )
+            {
+                return false;
+            }
+
+            this.patternCount--;
+            for ( var topic : this.register.values() )
+            {
+                if ( topic.remove(subscriber) )
+                {
+                    this.dropIfEmpty(topic);
+                }
+            }
+            return true;
+        }
     }
     
     /**
@@ -60,41 +265,162 @@ public class EventRegistry implements Dispatcher, Reactor
      * @param event the event to dispatch
      */
     @Override
-    public void dispatch(Event event)
+    public void dispatch(Event<?> event)
     {
-        var id = event.getId();
-        this.register.get(id).forEach( (action) -> {
-            action.perform(event.getInfo());
-        });
+        Topic<Object> topic = typed(this.existing(event.getId()));
+        if ( topic != null )
+        {
+            topic.send(event.getInfo());
+        }
+    }
+
+    /**
+     * Dispatch info to a topic.
+     * 
+     * @param <T> the type of the info
+     * @param topic the topic to dispatch to
+     * @param info the info to dispatch
+     */
+    @Override
+    public <T> void dispatch(Topic<T> topic, T info)
+    {
+        topic.send(info);
+    }
+
+    /**
+     * Post an event to the mailbox of each subscriber.
+     * The actions are performed by the provided executor, in order for each
+     * subscriber.
+     * 
+     * @param event the event to post
+     * @param executor the executor to perform the actions
+     */
+    public void post(Event<?> event, Executor executor)
+    {
+        Topic<Object> topic = typed(this.existing(event.getId()));
+        if ( topic != null )
+        {
+            topic.post(event.getInfo(), executor);
+        }
     }
     
     /**
-     * Get a default empty queue.
-     * @return 
+     * Get the topic for an event id.
+     * The topic can be kept and used to send info without looking up the id,
+     * so it is held by the registry even when it has no subscribers.
+     * 
+     * @param <T> the type of info sent to the topic
+     * @param id the event id
+     * @return the topic for the id
      */
-    private Queue<Action> getEmptyQueue()
+    public static final <T> Topic<T> topic(String id)
     {
-        return new ConcurrentLinkedQueue<>();
+        return typed(REGISTRY.hold(id));
+    }
+
+    /**
+     * Find the topic for an event id if anything subscribes to it.
+     * Unlike {@link #topic(String)} the topic is not held, so this does not
+     * keep a topic for ids that are sent to but never subscribed to.
+     * 
+     * @param <T> the type of info sent to the topic
+     * @param id the event id
+     * @return the topic for the id, or null if nothing subscribes to it
+     */
+    public static final <T> Topic<T> find(String id)
+    {
+        return typed(REGISTRY.existing(id));
+    }
+    
+    /**
+     * Get the registry as a dispatcher.
+     * 
+     * @return the dispatcher that performs actions on the sending thread
+     */
+    public static final Dispatcher dispatcher()
+    {
+        return REGISTRY;
     }
     
     /**
      * Register an action to be triggered on a given object.
-     * @param id to act on
+     * @param id to act on, or a wildcard pattern of ids
      * @param action the action to take
+     * @return the subscription, which can be used to unregister the action
      */
-    public static final void register(String id, Action action)
+    public static final Subscription register(String id, Action action)
     {
-        REGISTRY.on(id, action);
+        return REGISTRY.on(id, action);
+    }
+
+    /**
+     * Register an action with a bounded mailbox.
+     * @param id to act on, or a wildcard pattern of ids
+     * @param action the action to take
+     * @param capacity the maximum number of events waiting in the mailbox
+     * @param overflow what to do when the mailbox is full
+     * @return the subscription, which can be used to observe the mailbox and
+     * unregister the action
+     */
+    public static final Subscription register(String id, Action<?> action,
+                                              int capacity, Overflow overflow)
+    {
+        return PatternTrie.isPattern(id) ?
+            REGISTRY.subscribePattern(id, 
+                new Subscriber<>(id, untyped(action), capacity, overflow)) :
+            REGISTRY.subscribeTopic(id, 
+                new Subscriber<>(id, untyped(action), capacity, overflow));
     }
     
+    /**
+     * Type a topic taken from the register.
+     * Topics are keyed by id only, so the info type is up to the caller, as
+     * it is for the events sent to the id.
+     * 
+     * @param <T> the type of info sent to the topic
+     * @param topic the topic
+     * @return the topic, or null if topic is null
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Topic<T> typed(Topic<?> topic)
+    {
+        return (Topic<T>) topic;
+    }
+
+    /**
+     * Widen an action registered against an id to accept any info.
+     * The registry does not know the type of info sent to an id, so actions
+     * registered with it are given whatever info is sent.
+     * 
+     * @param action the action
+     * @return the action
+     */
+    @SuppressWarnings("unchecked")
+    private static Action<Object> untyped(Action<?> action)
+    {
+        return (Action<Object>) action;
+    }
+
     /**
      * Send an event.
      * 
      * @param event the event to send 
      */
-    public static final void send(Event event)
+    public static final void send(Event<?> event)
     {
         REGISTRY.dispatch(event);
     }
+
+    /**
+     * Send an event asynchronously.
+     * This method will not wait for the actions to be performed.
+     * 
+     * @param event the event to send
+     * @param executor the executor to perform the actions
+     */
+    public static final void send(Event<?> event, Executor executor)
+    {
+        REGISTRY.post(event, executor);
+    }
     
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016, 2018, Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+/**
+ * Info that carries its own partition key. Dispatchers that partition 
+ * events, such as the striped dispatcher, keep info with equal keys in 
+ * order when it is sent straight to a topic.
+ */
+@FunctionalInterface
+public interface Keyed
+{
+    
+    /**
+     * Get the partition key.
+     * 
+     * @return the key, or null if there is none
+     */
+    public Object getKey();
+    
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+/**
+ * What to do when info is posted to a full mailbox.
+ */
+public enum Overflow
+{
+
+    /**
+     * Block the sender until there is space in the mailbox.
+     */
+    BLOCK,
+
+    /**
+     * Drop the info being posted.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the oldest info waiting in the mailbox.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Throw an IllegalStateException to the sender.
+     */
+    FAIL;
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trie of subscribers to wildcard event id patterns.
+ * Event ids are split into segments at each '.'. In a pattern, a '*' segment
+ * matches exactly one segment and a '#' segment matches zero or more
+ * segments, e.g. "dns.*" matches "dns.route53" and "dns.#" also matches "dns"
+ * and "dns.route53.zoneA".
+ * <p>
+ * The trie is not thread safe, callers must synchronize access.
+ */
+class PatternTrie
+{
+    /**
+     * The segment that matches exactly one segment.
+     */
+    static final String ONE = "*";
+
+    /**
+     * The segment that matches zero or more segments.
+     */
+    static final String ANY = "#";
+
+    private final Node root = new Node();
+
+    /**
+     * Check if an event id is a wildcard pattern.
+     *
+     * @param id the event id
+     * @return true if the id has a wildcard segment
+     */
+    static boolean isPattern(String id)
+    {
+        for ( var segment : segments(id) )
+        {
+            if ( ONE.equals(segment) || ANY.equals(segment) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if an event id matches a pattern.
+     *
+     * @param pattern the pattern
+     * @param id the event id
+     * @return true if the id matches
+     */
+    static boolean matches(String pattern, String id)
+    {
+        return matches(segments(pattern), 0, segments(id), 0);
+    }
+
+    /**
+     * Add a subscriber to a pattern.
+     *
+     * @param pattern the pattern
+     * @param subscriber the subscriber
+     */
+    void add(String pattern, Subscriber<Object> subscriber)
+    {
+        var node = this.root;
+        for ( var segment : segments(pattern) )
+        {
+            node = node.children.computeIfAbsent(segment, (s) -> new Node());
+        }
+        node.subscribers.add(subscriber);
+    }
+
+    /**
+     * Remove a subscriber from a pattern.
+     *
+     * @param pattern the pattern
+     * @param subscriber the subscriber
+     * @return true if the subscriber was removed
+     */
+    boolean remove(String pattern, Subscriber<Object> subscriber)
+    {
+        return this.remove(this.root, segments(pattern), 0, subscriber);
+    }
+
+    /**
+     * Collect the subscribers of all patterns matching an event id.
+     * The cost depends on the number of segments in the id and the shape of
+     * the trie, not on the number of patterns.
+     *
+     * @param id the event id
+     * @param matched the set to add the matching subscribers to
+     */
+    void match(String id, Set<Subscriber<Object>> matched)
+    {
+        this.match(this.root, segments(id), 0, matched);
+    }
+
+    private void match(Node node, String[] segments, int index, 
+                       Set<Subscriber<Object>> matched)
+    {
+        if ( index == segments.length )
+        {
+            matched.addAll(node.subscribers);
+        }
+        else
+        {
+            var literal = node.children.get(segments[index]);
+            if ( literal != null )
+            {
+                this.match(literal, segments, index+1, matched);
+            }
+
+            var one = node.children.get(ONE);
+            if ( one != null )
+            {
+                this.match(one, segments, index+1, matched);
+            }
+        }
+
+        var any = node.children.get(ANY);
+        if ( any != null )
+        {
+            for ( int i=index ; i<=segments.length ; i++ )
+            {
+                this.match(any, segments, i, matched);
+            }
+        }
+    }
+
+    private boolean remove(Node node, String[] segments, int index,
+                           Subscriber<Object> subscriber)
+    {
+        if ( index == segments.length )
+        {
+            return node.subscribers.remove(subscriber);
+        }
+
+        var child = node.children.get(segments[index]);
+        if ( child == null || 
+             !this.remove(child, segments, index+1, subscriber) )
+        {
+            return false;
+        }
+
+        // Prune branches that no longer lead to a subscriber
+        if ( child.isEmpty() )
+        {
+            node.children.remove(segments[index]);
+        }
+        return true;
+    }
+
+    private static boolean matches(String[] pattern, int p, 
+                                   String[] id, int i)
+    {
+        if ( p == pattern.length )
+        {
+            return i == id.length;
+        }
+
+        if ( ANY.equals(pattern[p]) )
+        {
+            for ( int j=i ; j<=id.length ; j++ )
+            {
+                if ( matches(pattern, p+1, id, j) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return i < id.length && 
+               ( ONE.equals(pattern[p]) || pattern[p].equals(id[i]) ) &&
+               matches(pattern, p+1, id, i+1);
+    }
+
+    private static String[] segments(String id)
+    {
+        return id.split("\\.", -1);
+    }
+
+    /**
+     * A node in the trie.
+     */
+    private static class Node
+    {
+        private final Map<String,Node> children = new HashMap<>();
+        private final List<Subscriber<Object>> subscribers = new ArrayList<>();
+
+        private boolean isEmpty()
+        {
+            return this.children.isEmpty() && this.subscribers.isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.metrics.TimerMetrics;
+
+/**
+ * A subscriber of events.
+ * Events posted to a subscriber are queued in its mailbox and performed one at
+ * a time, so each subscriber sees its events in the order they were posted.
+ * A mailbox can be bounded, in which case the subscriber's Overflow policy
+ * decides what happens when info is posted to a full mailbox.
+ * Info posted from a conflating topic takes a single slot in the mailbox, which
+ * holds only the latest info from that topic until the subscriber performs it.
+ * The slot is forgotten once it is taken from the mailbox, so a subscriber
+ * does not keep a slot for every topic it has seen.
+ *
+ * @param <T> the type of info the subscriber acts on
+ */
+class Subscriber<T> implements Runnable
+{
+    private static final Logger LOG =
+        Logger.getLogger(Subscriber.class.getName());
+
+    /**
+     * The maximum number of events performed before yielding the thread.
+     */
+    private static final int DRAIN_LIMIT = 64;
+
+    /**
+     * Placeholder for null info, which the mailbox cannot hold.
+     */
+    private static final Object NULL_INFO = new Object();
+
+    private final Action<T> action;
+    private final Queue<Object> mailbox;
+    private final AtomicInteger pending;
+    private final int capacity;
+    private final Semaphore space;
+    private final Overflow overflow;
+    private final LongAdder dropped;
+    private final LongAdder conflated;
+    private final ConcurrentMap<Topic<?>,Latest> latest;
+    private final TimerMetrics metrics;
+    private volatile Executor executor;
+
+    /**
+     * Create a subscriber with an unbounded mailbox.
+     *
+     * @param id the event id or pattern subscribed to
+     * @param action the action to perform
+     */
+    Subscriber(String id, Action<T> action)
+    {
+        this(id, action, Integer.MAX_VALUE, Overflow.BLOCK);
+    }
+
+    /**
+     * Create a subscriber.
+     *
+     * @param id the event id or pattern subscribed to
+     * @param action the action to perform
+     * @param capacity the maximum number of info waiting in the mailbox,
+     * or Integer.MAX_VALUE for an unbounded mailbox
+     * @param overflow what to do when the mailbox is full
+     */
+    Subscriber(String id, Action<T> action, int capacity, Overflow overflow)
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Mailbox capacity must be positive: "+capacity);
+        }
+
+        this.action = action;
+        this.mailbox = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger(0);
+        this.capacity = capacity;
+        this.space = (capacity == Integer.MAX_VALUE) ? 
+            null : new Semaphore(capacity);
+        this.overflow = overflow;
+        this.dropped = new LongAdder();
+        this.conflated = new LongAdder();
+        this.latest = new ConcurrentHashMap<>();
+        this.metrics = Metrics.ENABLED ? Metrics.reactor(id) : null;
+    }
+
+    /**
+     * Get the capacity of the mailbox.
+     *
+     * @return the capacity, Integer.MAX_VALUE if unbounded
+     */
+    int capacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * Get the number of info waiting in the mailbox.
+     *
+     * @return the mailbox depth
+     */
+    int depth()
+    {
+        return (this.space == null) ? 
+            this.mailbox.size() : 
+            this.capacity - this.space.availablePermits();
+    }
+
+    /**
+     * Get the number of info dropped because the mailbox was full.
+     *
+     * @return the number of dropped info
+     */
+    long dropped()
+    {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Get the number of info replaced by newer info from a conflating topic
+     * before it was performed.
+     *
+     * @return the number of conflated info
+     */
+    long conflated()
+    {
+        return this.conflated.sum();
+    }
+
+    /**
+     * Perform the action on the calling thread.
+     *
+     * @param info the info for the action
+     */
+    void perform(T info)
+    {
+        if ( !Metrics.ENABLED )
+        {
+            this.action.perform(info);
+            return;
+        }
+
+        var start = System.nanoTime();
+        try
+        {
+            this.action.perform(info);
+        }
+        catch ( RuntimeException e )
+        {
+            this.metrics.failed();
+            throw e;
+        }
+        finally
+        {
+            this.metrics.record(System.nanoTime()-start);
+        }
+    }
+
+    /**
+     * Release the resources of a subscriber that has been unregistered.
+     */
+    void close()
+    {
+        if ( Metrics.ENABLED )
+        {
+            Metrics.remove(this.metrics);
+        }
+    }
+
+    /**
+     * Post info to this subscriber's mailbox.
+     * The action will be performed by the provided executor.
+     *
+     * @param info the info for the action
+     * @param executor the executor to perform the action
+     */
+    void post(T info, Executor executor)
+    {
+        var item = (info == null) ? NULL_INFO : info;
+
+        if ( this.space != null && !this.space.tryAcquire() )
+        {
+            switch ( this.overflow )
+            {
+                case BLOCK:
+                    try
+                    {
+                        this.space.acquire();
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        Thread.currentThread().interrupt();
+                        this.dropped.increment();
+                        return;
+                    }
+                    break;
+                case DROP_NEWEST:
+                    this.dropped.increment();
+                    return;
+                case DROP_OLDEST:
+                    this.evictForSpace();
+                    break;
+                case FAIL:
+                default:
+                    this.dropped.increment();
+                    throw new IllegalStateException("Mailbox full");
+            }
+        }
+
+        this.enqueue(item, executor);
+    }
+
+    /**
+     * Drop the oldest info in the mailbox until there is space for more.
+     * <p>
+     * The pending count of dropped info is left for the subscriber to
+     * consume, it finds nothing to perform for it. A dropped conflating slot
+     * is cleared so the topic's next info queues a new slot.
+     */
+    private void evictForSpace()
+    {
+        while ( !this.space.tryAcquire() )
+        {
+            var evicted = this.mailbox.poll();
+            if ( evicted == null )
+            {
+                // Another sender holds the space but has not queued yet
+                Thread.onSpinWait();
+                continue;
+            }
+
+            if ( evicted instanceof Latest )
+            {
+                this.take((Latest) evicted);
+            }
+            else
+            {
+                this.space.release();
+            }
+            this.dropped.increment();
+        }
+    }
+
+    /**
+     * Post the latest info from a conflating topic to this subscriber.
+     * If info from the topic is still waiting in the mailbox it is replaced,
+     * otherwise the info is queued behind the other waiting info. Conflated
+     * info does not count against the capacity of the mailbox.
+     *
+     * @param topic the conflating topic
+     * @param info the info for the action
+     * @param executor the executor to perform the action
+     */
+    void postLatest(Topic<?> topic, T info, Executor executor)
+    {
+        var slot = this.latest.get(topic);
+        if ( slot == null )
+        {
+            slot = this.latest.computeIfAbsent(topic, Latest::new);
+        }
+
+        if ( slot.getAndSet((info == null) ? NULL_INFO : info) != null )
+        {
+            this.conflated.increment();
+            return;
+        }
+
+        this.enqueue(slot, executor);
+    }
+
+    /**
+     * Add an item to the mailbox, scheduling the subscriber if it is idle.
+     *
+     * @param item the item to add
+     * @param executor the executor to perform the action
+     */
+    private void enqueue(Object item, Executor executor)
+    {
+        this.mailbox.offer(item);
+
+        if ( this.pending.getAndIncrement() == 0 )
+        {
+            this.executor = executor;
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Perform the actions waiting in the mailbox.
+     */
+    @Override
+    public void run()
+    {
+        var more = true;
+        try
+        {
+            for ( int i=0 ; i<DRAIN_LIMIT && more ; i++ )
+            {
+                var info = this.mailbox.poll();
+                if ( info instanceof Latest )
+                {
+                    // Take the latest info, later posts queue a new slot
+                    info = this.take((Latest) info);
+                }
+                else if ( info != null && this.space != null )
+                {
+                    this.space.release();
+                }
+
+                try
+                {
+                    // No info if it was dropped to make space
+                    if ( info != null )
+                    {
+                        this.perform(this.unwrap(info));
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    // Keep draining, a failed action must not strand the
+                    // rest of the mailbox
+                    LOG.log(Level.WARNING, "Action failed", t);
+                }
+                finally
+                {
+                    more = this.pending.decrementAndGet() != 0;
+                }
+            }
+        }
+        finally
+        {
+            // More events are waiting, give other subscribers a turn
+            if ( more )
+            {
+                this.executor.execute(this);
+            }
+        }
+    }
+
+    /**
+     * Get the info held in the mailbox.
+     * Only info of type T is posted to this subscriber, so the cast is safe.
+     *
+     * @param item the item taken from the mailbox
+     * @return the info
+     */
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object item)
+    {
+        return (item == NULL_INFO) ? null : (T) item;
+    }
+
+    /**
+     * Take the info from a conflating topic's slot that has left the mailbox.
+     * The slot is forgotten first, so info posted after it was taken gets a
+     * new slot rather than one that is no longer queued.
+     *
+     * @param slot the slot
+     * @return the latest info, or null if there is none
+     */
+    private Object take(Latest slot)
+    {
+        this.latest.remove(slot.topic, slot);
+        return slot.getAndSet(null);
+    }
+
+    /**
+     * The mailbox slot holding the latest info from a conflating topic.
+     */
+    private static final class Latest extends AtomicReference<Object>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Topic<?> topic;
+
+        Latest(Topic<?> topic)
+        {
+            this.topic = topic;
+        }
+    }
+
+}
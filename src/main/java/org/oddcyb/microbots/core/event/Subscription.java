@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * A handle for an action registered with the EventRegistry.
+ */
+public class Subscription
+{
+    private final String id;
+    private final Subscriber<?> subscriber;
+    private final BooleanSupplier unregister;
+
+    /**
+     * Create a subscription.
+     *
+     * @param id the event id or pattern subscribed to
+     * @param subscriber the subscriber
+     * @param unregister removes the subscriber, returning true if it was 
+     * still registered
+     */
+    Subscription(String id, Subscriber<?> subscriber, 
+                 BooleanSupplier unregister)
+    {
+        this.id = id;
+        this.subscriber = subscriber;
+        this.unregister = unregister;
+    }
+
+    /**
+     * Get the event id or pattern subscribed to.
+     *
+     * @return the event id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * Get the capacity of the action's mailbox.
+     *
+     * @return the capacity, Integer.MAX_VALUE if unbounded
+     */
+    public int getCapacity()
+    {
+        return this.subscriber.capacity();
+    }
+
+    /**
+     * Get the number of info waiting in the action's mailbox.
+     *
+     * @return the mailbox depth
+     */
+    public int getDepth()
+    {
+        return this.subscriber.depth();
+    }
+
+    /**
+     * Get the number of info dropped because the action's mailbox was full.
+     *
+     * @return the number of dropped info
+     */
+    public long getDropped()
+    {
+        return this.subscriber.dropped();
+    }
+
+    /**
+     * Get the number of info from conflating topics that was replaced by newer
+     * info before the action was performed.
+     *
+     * @return the number of conflated info
+     */
+    public long getConflated()
+    {
+        return this.subscriber.conflated();
+    }
+
+    /**
+     * Unregister the action.
+     * The action will not be performed for events sent after this method
+     * returns. Events already posted to the action may still be performed.
+     *
+     * @return true if the action was unregistered, false if it already had
+     * been
+     */
+    public boolean unregister()
+    {
+        if ( !this.unregister.getAsBoolean() )
+        {
+            return false;
+        }
+
+        this.subscriber.close();
+        return true;
+    }
+
+}
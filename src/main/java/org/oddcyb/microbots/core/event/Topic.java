@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.event;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import org.oddcyb.microbots.Action;
+import org.oddcyb.microbots.core.metrics.Metrics;
+import org.oddcyb.microbots.core.metrics.TopicMetrics;
+
+/**
+ * A handle for an event id and its subscribers.
+ * Subscribers are held in an array that is copied when a subscriber is added
+ * or removed, so events can be dispatched to a snapshot without locking or
+ * allocating. Sending info through a topic skips the id lookup and does not
+ * create an Event.
+ * <p>
+ * A conflating topic is for state-like info where only the latest value
+ * matters. Info posted to a conflating topic replaces any info from the topic
+ * still waiting for a subscriber, so a slow subscriber performs the latest
+ * info rather than a backlog of stale info.
+ * 
+ * @param <T> the type of info sent to the topic
+ */
+public class Topic<T>
+{
+    private static final Subscriber<?>[] NO_SUBSCRIBERS = new Subscriber<?>[0];
+
+    private final String id;
+    private final TopicMetrics metrics;
+    private volatile Subscriber<? super T>[] subscribers;
+    private volatile boolean conflating;
+    private volatile boolean held;
+
+    /**
+     * Create a topic.
+     *
+     * @param id the event id
+     */
+    Topic(String id)
+    {
+        this.id = id;
+        this.metrics = Metrics.ENABLED ? Metrics.topic(id) : null;
+        this.subscribers = none();
+    }
+
+    /**
+     * Get the event id of this topic.
+     *
+     * @return the event id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * Check if info posted to this topic is conflated.
+     *
+     * @return true if only the latest posted info is kept for each subscriber
+     */
+    public boolean isConflating()
+    {
+        return this.conflating;
+    }
+
+    /**
+     * Set whether info posted to this topic is conflated.
+     * Conflation only applies to posted info, info sent on the calling thread
+     * is always performed.
+     *
+     * @param conflating true to keep only the latest posted info for each
+     * subscriber
+     * @return this topic
+     */
+    public Topic<T> setConflating(boolean conflating)
+    {
+        this.conflating = conflating;
+        return this;
+    }
+
+    /**
+     * Check if this topic has been handed out by the registry.
+     * A held topic is kept even when it has no subscribers, so info sent 
+     * through the handle reaches any subscriber registered later.
+     *
+     * @return true if the topic is held
+     */
+    boolean isHeld()
+    {
+        return this.held;
+    }
+
+    /**
+     * Mark this topic as handed out by the registry.
+     */
+    void hold()
+    {
+        this.held = true;
+    }
+
+    /**
+     * Check if this topic has no subscribers.
+     *
+     * @return true if there are no subscribers
+     */
+    boolean isEmpty()
+    {
+        return this.subscribers.length == 0;
+    }
+
+    /**
+     * Release the resources of a topic that has been dropped by the registry.
+     */
+    void close()
+    {
+        if ( Metrics.ENABLED )
+        {
+            Metrics.removeTopic(this.id);
+        }
+    }
+
+    /**
+     * Get the current subscribers.
+     * The returned array must not be modified.
+     *
+     * @return a snapshot of the subscribers
+     */
+    Subscriber<? super T>[] subscribers()
+    {
+        return this.subscribers;
+    }
+
+    /**
+     * Send info to the subscribers of this topic.
+     * The actions are performed on the calling thread.
+     *
+     * @param info the info to send
+     */
+    public void send(T info)
+    {
+        var current = this.subscribers;
+        if ( Metrics.ENABLED )
+        {
+            this.metrics.sent(current.length);
+        }
+
+        for ( var subscriber : current )
+        {
+            subscriber.perform(info);
+        }
+    }
+
+    /**
+     * Post info to the mailbox of each subscriber of this topic.
+     * The actions are performed by the provided executor, in order for each
+     * subscriber. If the topic is conflating, info still waiting for a
+     * subscriber is replaced by this info.
+     *
+     * @param info the info to post
+     * @param executor the executor to perform the actions
+     */
+    public void post(T info, Executor executor)
+    {
+        var current = this.subscribers;
+        if ( Metrics.ENABLED )
+        {
+            this.metrics.sent(current.length);
+        }
+
+        if ( this.conflating )
+        {
+            for ( var subscriber : current )
+            {
+                subscriber.postLatest(this, info, executor);
+            }
+            return;
+        }
+
+        for ( var subscriber : current )
+        {
+            subscriber.post(info, executor);
+        }
+    }
+
+    /**
+     * Subscribe an action to this topic.
+     * Wildcard patterns must be registered with the EventRegistry, an action
+     * subscribed to a topic only receives info sent to that topic.
+     *
+     * @param action the action to perform when info is sent
+     * @return the subscription for the action
+     */
+    public Subscription subscribe(Action<T> action)
+    {
+        return this.subscribe(new Subscriber<>(this.id, action));
+    }
+
+    /**
+     * Subscribe an action to this topic with a bounded mailbox.
+     * The mailbox only applies to posted info, info sent on the calling thread
+     * is always performed.
+     *
+     * @param action the action to perform when info is posted
+     * @param capacity the maximum number of info waiting in the mailbox
+     * @param overflow what to do when the mailbox is full
+     * @return the subscription for the action
+     */
+    public Subscription subscribe(Action<T> action, int capacity, 
+                                  Overflow overflow)
+    {
+        return this.subscribe(
+            new Subscriber<>(this.id, action, capacity, overflow));
+    }
+
+    /**
+     * Subscribe a subscriber to this topic.
+     *
+     * @param subscriber the subscriber
+     * @return the subscription for the subscriber
+     */
+    private Subscription subscribe(Subscriber<T> subscriber)
+    {
+        this.add(subscriber);
+        return new Subscription(this.id, subscriber, 
+                                () -> this.remove(subscriber));
+    }
+
+    /**
+     * Add a subscriber to this topic.
+     *
+     * @param subscriber the subscriber to add
+     */
+    synchronized void add(Subscriber<? super T> subscriber)
+    {
+        var current = this.subscribers;
+        var updated = Arrays.copyOf(current, current.length+1);
+        updated[current.length] = subscriber;
+        this.subscribers = updated;
+    }
+
+    /**
+     * Remove a subscriber from this topic.
+     *
+     * @param subscriber the subscriber to remove
+     * @return true if the subscriber was removed, false if it was not found
+     */
+    synchronized boolean remove(Subscriber<?> subscriber)
+    {
+        var current = this.subscribers;
+        for ( int i=0 ; i<current.length ; i++ )
+        {
+            if ( current[i] == subscriber )
+            {
+                var updated = Arrays.copyOf(current, current.length-1);
+                System.arraycopy(current, i+1, updated, i, 
+                                 current.length-i-1);
+                this.subscribers = (updated.length == 0) ? none() : updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the shared empty subscriber array.
+     * The array is never written to, so it can be shared by every topic.
+     *
+     * @param <T> the type of info sent to the topic
+     * @return the empty subscriber array
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Subscriber<? super T>[] none()
+    {
+        return (Subscriber<? super T>[]) NO_SUBSCRIBERS;
+    }
+
+}
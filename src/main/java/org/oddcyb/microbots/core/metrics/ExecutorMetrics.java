@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Metrics for a ThreadPoolExecutor.
+ * The metrics are read from the executor when requested.
+ */
+public class ExecutorMetrics implements ExecutorMetricsMXBean
+{
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Create metrics for an executor.
+     * 
+     * @param executor the executor
+     */
+    public ExecutorMetrics(ThreadPoolExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public int getActiveThreads()
+    {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public int getPoolSize()
+    {
+        return this.executor.getPoolSize();
+    }
+
+    @Override
+    public long getCompletedTasks()
+    {
+        return this.executor.getCompletedTaskCount();
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+/**
+ * JMX view of the metrics for an executor.
+ */
+public interface ExecutorMetricsMXBean
+{
+
+    /**
+     * Get the number of tasks waiting in the executor's queue.
+     * 
+     * @return the queue depth
+     */
+    public int getQueueDepth();
+
+    /**
+     * Get the number of threads running tasks.
+     * 
+     * @return the number of active threads
+     */
+    public int getActiveThreads();
+
+    /**
+     * Get the number of threads in the executor's pool.
+     * 
+     * @return the pool size
+     */
+    public int getPoolSize();
+
+    /**
+     * Get the number of tasks the executor has completed.
+     * 
+     * @return the number of completed tasks
+     */
+    public long getCompletedTasks();
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.
+ * Like an HDR histogram, values are counted in buckets that are linear within
+ * each power of two, so every recorded value is within ~6% of its bucket and
+ * recording is a fixed number of atomic increments.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final LongAccumulator max;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.total = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a latency.
+     * 
+     * @param nanos the latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos)
+    {
+        var value = Math.max(nanos, 0);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.increment();
+        this.total.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Get the number of recorded latencies.
+     * 
+     * @return the count
+     */
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * Get the mean recorded latency.
+     * 
+     * @return the mean in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getMean()
+    {
+        var n = this.count.sum();
+        return (n == 0) ? 0 : this.total.sum() / n;
+    }
+
+    /**
+     * Get the maximum recorded latency.
+     * 
+     * @return the maximum in nanoseconds
+     */
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    /**
+     * Get the latency at a percentile.
+     * 
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound of the bucket holding the percentile, in 
+     * nanoseconds, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        var n = 0L;
+        for ( int i=0 ; i<BUCKETS ; i++ )
+        {
+            n += this.counts.get(i);
+        }
+
+        var rank = (long) Math.ceil(n * Math.min(percentile, 100.0) / 100.0);
+        var seen = 0L;
+        for ( int i=0 ; i<BUCKETS ; i++ )
+        {
+            seen += this.counts.get(i);
+            if ( seen > 0 && seen >= rank )
+            {
+                return Math.min(upperBoundOf(i), this.getMax());
+            }
+        }
+        return 0;
+    }
+
+    private static int bucketOf(long value)
+    {
+        var msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        if ( msb < SUB_BUCKET_BITS )
+        {
+            return (int) value;
+        }
+
+        var shift = msb - SUB_BUCKET_BITS;
+        var sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket)
+    {
+        if ( bucket < SUB_BUCKETS )
+        {
+            return bucket;
+        }
+
+        var shift = bucket / SUB_BUCKETS - 1;
+        var sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+}
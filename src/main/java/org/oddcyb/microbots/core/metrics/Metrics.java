@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics for the Microbots framework.
+ * <p>
+ * Metrics are collected when the {@value #METRICS_PROP} system property is
+ * "true". Each metric is available from the pull API on this class and as 
+ * an MBean in the "org.oddcyb.microbots" JMX domain. When metrics are 
+ * disabled, instrumented code only checks the constant {@link #ENABLED}, 
+ * which the JIT removes.
+ */
+public class Metrics
+{
+    private static final Logger LOG = 
+        Logger.getLogger(Metrics.class.getName());
+
+    /**
+     * System property that enables metrics.
+     */
+    public static final String METRICS_PROP = "microbots.metrics";
+
+    /**
+     * True if metrics are collected.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(METRICS_PROP);
+
+    /**
+     * The JMX domain of the metrics MBeans.
+     */
+    public static final String JMX_DOMAIN = "org.oddcyb.microbots";
+
+    private static final ConcurrentMap<String,TopicMetrics> TOPICS =
+        new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,TimerMetrics> REACTORS =
+        new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,TimerMetrics> ROBOTS =
+        new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,ExecutorMetrics> EXECUTORS =
+        new ConcurrentHashMap<>();
+    private static final AtomicInteger REACTOR_COUNT = new AtomicInteger(0);
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * Get the metrics for a topic, creating them if needed.
+     * 
+     * @param id the topic's event id
+     * @return the metrics
+     */
+    public static TopicMetrics topic(String id)
+    {
+        return TOPICS.computeIfAbsent(id, (i) -> {
+            return register("Topic", i, new TopicMetrics());
+        });
+    }
+
+    /**
+     * Remove the metrics for a topic that has been dropped.
+     * 
+     * @param id the topic's event id
+     */
+    public static void removeTopic(String id)
+    {
+        if ( TOPICS.remove(id) != null )
+        {
+            unregister("Topic", id);
+        }
+    }
+
+    /**
+     * Create the metrics for a reactor.
+     * Each reactor has its own metrics, named after the id it reacts to.
+     * 
+     * @param id the event id or pattern the reactor reacts to
+     * @return the metrics
+     */
+    public static TimerMetrics reactor(String id)
+    {
+        var name = id+"#"+REACTOR_COUNT.incrementAndGet();
+        var metrics = register("Reactor", name, new TimerMetrics());
+        REACTORS.put(name, metrics);
+        return metrics;
+    }
+
+    /**
+     * Remove the metrics for a reactor that has been unregistered.
+     * 
+     * @param metrics the reactor's metrics
+     */
+    public static void remove(TimerMetrics metrics)
+    {
+        REACTORS.forEach( (name, m) -> {
+            if ( m == metrics && REACTORS.remove(name, m) )
+            {
+                unregister("Reactor", name);
+            }
+        });
+    }
+
+    /**
+     * Get the metrics for a type of robot, creating them if needed.
+     * 
+     * @param robot the robot
+     * @return the metrics for the robot's class
+     */
+    public static TimerMetrics robot(Object robot)
+    {
+        var name = robot.getClass().getName();
+
+        // Lambda robots share the metrics of the class that created them
+        var lambda = name.indexOf("$$Lambda");
+        if ( lambda > 0 )
+        {
+            name = name.substring(0, lambda);
+        }
+
+        return ROBOTS.computeIfAbsent(name, (n) -> {
+            return register("Robot", n, new TimerMetrics());
+        });
+    }
+
+    /**
+     * Add metrics for an executor.
+     * Only ThreadPoolExecutors provide metrics, other executors are ignored.
+     * 
+     * @param name the name of the executor
+     * @param executor the executor
+     */
+    public static void executor(String name, Executor executor)
+    {
+        if ( executor instanceof ThreadPoolExecutor )
+        {
+            EXECUTORS.computeIfAbsent(name, (n) -> {
+                return register("Executor", n, 
+                    new ExecutorMetrics((ThreadPoolExecutor) executor));
+            });
+        }
+    }
+
+    /**
+     * Remove the metrics for an executor.
+     * 
+     * @param name the name of the executor
+     */
+    public static void removeExecutor(String name)
+    {
+        if ( EXECUTORS.remove(name) != null )
+        {
+            unregister("Executor", name);
+        }
+    }
+
+    /**
+     * Get the metrics for all topics.
+     * 
+     * @return the topic metrics, by event id
+     */
+    public static Map<String,TopicMetrics> topics()
+    {
+        return Collections.unmodifiableMap(TOPICS);
+    }
+
+    /**
+     * Get the metrics for all reactors.
+     * 
+     * @return the reactor metrics, by reactor name
+     */
+    public static Map<String,TimerMetrics> reactors()
+    {
+        return Collections.unmodifiableMap(REACTORS);
+    }
+
+    /**
+     * Get the metrics for all robots.
+     * 
+     * @return the robot metrics, by robot class
+     */
+    public static Map<String,TimerMetrics> robots()
+    {
+        return Collections.unmodifiableMap(ROBOTS);
+    }
+
+    /**
+     * Get the metrics for all executors.
+     * 
+     * @return the executor metrics, by executor name
+     */
+    public static Map<String,ExecutorMetrics> executors()
+    {
+        return Collections.unmodifiableMap(EXECUTORS);
+    }
+
+    private static <M> M register(String type, String name, M metrics)
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer()
+                             .registerMBean(metrics, objectName(type, name));
+        }
+        catch ( JMException jme )
+        {
+            LOG.log(Level.WARNING, "Failed to register {0} {1} : {2}", 
+                new Object[]{ type, name, jme });
+        }
+        return metrics;
+    }
+
+    private static void unregister(String type, String name)
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer()
+                             .unregisterMBean(objectName(type, name));
+        }
+        catch ( JMException jme )
+        {
+            LOG.log(Level.FINE, "Failed to unregister {0} {1} : {2}", 
+                new Object[]{ type, name, jme });
+        }
+    }
+
+    private static ObjectName objectName(String type, String name) 
+        throws JMException
+    {
+        return new ObjectName(
+            JMX_DOMAIN+":type="+type+",name="+ObjectName.quote(name));
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics for something that is timed, such as a reactor's action or a 
+ * robot's activation.
+ */
+public class TimerMetrics implements TimerMetricsMXBean
+{
+    private final LatencyHistogram durations = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Record a duration.
+     * 
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        this.durations.record(nanos);
+    }
+
+    /**
+     * Record a failure.
+     * The duration of the failed work should also be recorded.
+     */
+    public void failed()
+    {
+        this.failures.increment();
+    }
+
+    /**
+     * Get the histogram of durations.
+     * 
+     * @return the histogram
+     */
+    public LatencyHistogram getDurations()
+    {
+        return this.durations;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return this.durations.getCount();
+    }
+
+    @Override
+    public long getFailures()
+    {
+        return this.failures.sum();
+    }
+
+    @Override
+    public long getMeanNanos()
+    {
+        return this.durations.getMean();
+    }
+
+    @Override
+    public long getP50Nanos()
+    {
+        return this.durations.getPercentile(50);
+    }
+
+    @Override
+    public long getP99Nanos()
+    {
+        return this.durations.getPercentile(99);
+    }
+
+    @Override
+    public long getP999Nanos()
+    {
+        return this.durations.getPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxNanos()
+    {
+        return this.durations.getMax();
+    }
+
+}
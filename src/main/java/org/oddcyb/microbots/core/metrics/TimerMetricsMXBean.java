@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+/**
+ * JMX view of the metrics for something that is timed, such as a reactor's
+ * action or a robot's activation.
+ */
+public interface TimerMetricsMXBean
+{
+
+    /**
+     * Get the number of times the timed work completed or failed.
+     * 
+     * @return the count
+     */
+    public long getCount();
+
+    /**
+     * Get the number of times the timed work failed.
+     * 
+     * @return the failure count
+     */
+    public long getFailures();
+
+    /**
+     * Get the mean duration.
+     * 
+     * @return the mean in nanoseconds
+     */
+    public long getMeanNanos();
+
+    /**
+     * Get the median duration.
+     * 
+     * @return the median in nanoseconds
+     */
+    public long getP50Nanos();
+
+    /**
+     * Get the 99th percentile duration.
+     * 
+     * @return the 99th percentile in nanoseconds
+     */
+    public long getP99Nanos();
+
+    /**
+     * Get the 99.9th percentile duration.
+     * 
+     * @return the 99.9th percentile in nanoseconds
+     */
+    public long getP999Nanos();
+
+    /**
+     * Get the maximum duration.
+     * 
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos();
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics for a topic.
+ */
+public class TopicMetrics implements TopicMetricsMXBean
+{
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * Record an event sent to a number of subscribers.
+     * 
+     * @param subscribers the number of subscribers the event was delivered to
+     */
+    public void sent(int subscribers)
+    {
+        this.sent.increment();
+        this.delivered.add(subscribers);
+    }
+
+    @Override
+    public long getSent()
+    {
+        return this.sent.sum();
+    }
+
+    @Override
+    public long getDelivered()
+    {
+        return this.delivered.sum();
+    }
+
+}
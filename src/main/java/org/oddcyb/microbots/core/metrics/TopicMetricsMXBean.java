@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.metrics;
+
+/**
+ * JMX view of the metrics for a topic.
+ */
+public interface TopicMetricsMXBean
+{
+
+    /**
+     * Get the number of events sent to the topic.
+     * 
+     * @return the number of events sent
+     */
+    public long getSent();
+
+    /**
+     * Get the number of times an event was delivered to a subscriber.
+     * 
+     * @return the number of deliveries
+     */
+    public long getDelivered();
+
+}
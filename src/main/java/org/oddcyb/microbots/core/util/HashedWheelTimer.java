@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.core.util;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A timer that holds timeouts in a hashed wheel of buckets.
+ * <p>
+ * A single thread advances the wheel one bucket per tick and runs the 
+ * timeouts that have expired in that bucket, so scheduling, cancelling and
+ * firing a timeout cost the same however many timeouts are scheduled.
+ * Timeouts fire up to one tick late. Tasks run on the timer thread and must
+ * be short, e.g. handing work to an executor.
+ */
+public class HashedWheelTimer
+{
+    private static final Logger LOG =
+        Logger.getLogger(HashedWheelTimer.class.getName());
+
+    /**
+     * System property that provides the shared timer's tick in milliseconds.
+     */
+    public static final String TICK_PROP = "microbots.timer-tick-ms";
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running;
+
+    /**
+     * Holds the shared timer, which is only started when it is first used.
+     */
+    private static class Shared
+    {
+        static final HashedWheelTimer TIMER = new HashedWheelTimer(
+            Duration.ofMillis(Long.getLong(TICK_PROP, 10)), 512);
+    }
+
+    /**
+     * Create a timer and start its thread.
+     * 
+     * @param tick the time between advances of the wheel
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(Duration tick, int wheelSize)
+    {
+        if ( tick.toNanos() <= 0 || wheelSize < 1 || wheelSize > (1 << 30) )
+        {
+            throw new IllegalArgumentException(
+                "Invalid timer tick "+tick+" or wheel size "+wheelSize);
+        }
+
+        var size = Integer.highestOneBit(wheelSize);
+        size = (size < wheelSize) ? size << 1 : size;
+
+        this.tickNanos = tick.toNanos();
+        this.wheel = new Bucket[size];
+        for ( int i=0 ; i<size ; i++ )
+        {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.running = true;
+
+        this.worker = new RobotThreadFactory().newThread(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Get the shared timer.
+     * 
+     * @return the shared timer
+     */
+    public static HashedWheelTimer shared()
+    {
+        return Shared.TIMER;
+    }
+
+    /**
+     * Schedule a task to run once after a delay.
+     * 
+     * @param task the task to run on the timer thread
+     * @param delay the delay
+     * @param unit the unit of the delay
+     * @return the timeout, which can be cancelled
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        if ( !this.running )
+        {
+            throw new IllegalStateException("Timer has been stopped");
+        }
+
+        var deadline = 
+            System.nanoTime() - this.startTime + unit.toNanos(delay);
+        var timeout = new Timeout(task, deadline);
+        this.pending.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the timer.
+     * Timeouts that have not fired will not be run.
+     */
+    public void stop()
+    {
+        this.running = false;
+        LockSupport.unpark(this.worker);
+    }
+
+    private void run()
+    {
+        long tick = 0;
+
+        while ( this.running )
+        {
+            this.waitForTick(tick);
+            this.transferPending(tick);
+            this.wheel[(int) tick & this.mask].expire();
+            tick++;
+        }
+    }
+
+    private void waitForTick(long tick)
+    {
+        var deadline = this.startTime + this.tickNanos * (tick + 1);
+        var sleep = deadline - System.nanoTime();
+        while ( sleep > 0 && this.running )
+        {
+            LockSupport.parkNanos(sleep);
+            sleep = deadline - System.nanoTime();
+        }
+    }
+
+    private void transferPending(long tick)
+    {
+        Timeout timeout;
+        while ( (timeout = this.pending.poll()) != null )
+        {
+            if ( timeout.cancelled )
+            {
+                continue;
+            }
+
+            // Work out how many times the wheel must turn before the timeout
+            // is due, timeouts already due go in the current bucket
+            var due = timeout.deadline / this.tickNanos;
+            timeout.rounds = (due - tick) / this.wheel.length;
+            var bucket = Math.max(due, tick);
+            this.wheel[(int) bucket & this.mask].add(timeout);
+        }
+    }
+
+    /**
+     * A task scheduled on the timer.
+     */
+    public static class Timeout
+    {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        private long rounds;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the timeout.
+         * The task will not run unless it is already running.
+         */
+        public void cancel()
+        {
+            this.cancelled = true;
+        }
+
+        /**
+         * Check if the timeout has been cancelled.
+         * 
+         * @return true if cancelled
+         */
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+    }
+
+    /**
+     * A bucket of timeouts, only used by the timer thread.
+     */
+    private static class Bucket
+    {
+        private Timeout head;
+
+        private void add(Timeout timeout)
+        {
+            timeout.prev = null;
+            timeout.next = this.head;
+            if ( this.head != null )
+            {
+                this.head.prev = timeout;
+            }
+            this.head = timeout;
+        }
+
+        private void remove(Timeout timeout)
+        {
+            if ( timeout.prev != null )
+            {
+                timeout.prev.next = timeout.next;
+            }
+            else
+            {
+                this.head = timeout.next;
+            }
+
+            if ( timeout.next != null )
+            {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+        }
+
+        private void expire()
+        {
+            var timeout = this.head;
+            while ( timeout != null )
+            {
+                var next = timeout.next;
+
+                if ( timeout.cancelled )
+                {
+                    this.remove(timeout);
+                }
+                else if ( timeout.rounds <= 0 )
+                {
+                    this.remove(timeout);
+                    try
+                    {
+                        timeout.task.run();
+                    }
+                    catch ( Throwable t )
+                    {
+                        // One failed task must not stop every other timeout
+                        LOG.log(Level.WARNING, "Timer task failed", t);
+                    }
+                }
+                else
+                {
+                    timeout.rounds--;
+                }
+
+                timeout = next;
+            }
+        }
+    }
+
+}
@@ -9,15 +9,32 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class RobotThreadFactory implements ThreadFactory
 {
     private final AtomicInteger tCount = new AtomicInteger(0);
+    private final ThreadFactory threads;
+
+    public RobotThreadFactory()
+    {
+        this(Thread::new);
+    }
+
+    /**
+     * Create a RobotThreadFactory that names and configures threads created
+     * by another factory, e.g. a factory of virtual threads.
+     * 
+     * @param threads the factory that creates the unstarted threads
+     */
+    public RobotThreadFactory(ThreadFactory threads)
+    {
+        this.threads = threads;
+    }
 
     @Override
     public Thread newThread(Runnable runnable)
     {
-        var thread = new Thread(runnable, 
-                                "Robot-thread-"+tCount.incrementAndGet());
+        var thread = this.threads.newThread(runnable);
+        thread.setName("Robot-thread-"+tCount.incrementAndGet());
         thread.setDaemon(true);
         thread.setUncaughtExceptionHandler(new RobotUncaughtExceptionHandler());
         return thread;
     }
    
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package org.oddcyb.microbots.core.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access to virtual threads, when the running JVM provides them.
+ * Microbots builds for Java 11, so virtual threads (Java 21+) are looked up
+ * reflectively. When they are not available, platform threads are used.
+ */
+public class VirtualThreads
+{
+    private static final Logger LOG =
+        Logger.getLogger(VirtualThreads.class.getName());
+
+    private static final ThreadFactory VIRTUAL_FACTORY = lookupFactory();
+
+    private VirtualThreads()
+    {
+    }
+
+    /**
+     * Check if virtual threads are available.
+     * 
+     * @return true if the JVM provides virtual threads
+     */
+    public static boolean isAvailable()
+    {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Create an executor that runs each task on a new robot thread.
+     * The threads are virtual when available, and are named, daemon and 
+     * report uncaught exceptions as created by RobotThreadFactory. 
+     * If virtual threads are not available a cached pool of platform robot
+     * threads is returned.
+     * 
+     * @return the executor
+     */
+    public static ExecutorService newRobotExecutor()
+    {
+        if ( !isAvailable() )
+        {
+            LOG.warning(
+                "Virtual threads not available, using platform threads");
+            return Executors.newCachedThreadPool(new RobotThreadFactory());
+        }
+
+        var factory = new RobotThreadFactory(VIRTUAL_FACTORY);
+        try
+        {
+            return (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        }
+        catch ( ReflectiveOperationException roe )
+        {
+            // Virtual threads without a thread-per-task executor, an unbounded
+            // pool will only reuse threads that have finished their task
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Look up the JVM's factory of virtual threads.
+     * 
+     * @return the factory, or null if virtual threads are not available
+     */
+    private static ThreadFactory lookupFactory()
+    {
+        try
+        {
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) 
+                Class.forName("java.lang.Thread$Builder")
+                     .getMethod("factory")
+                     .invoke(builder);
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            LOG.log(Level.FINE, "Virtual threads not available: {0}", e);
+            return null;
+        }
+    }
+
+}
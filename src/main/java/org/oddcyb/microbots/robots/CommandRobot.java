@@ -83,6 +83,9 @@ public class CommandRobot implements Robot
 
     /**
      * Run this robot's command.
+     * If waiting for the command is interrupted, such as when the robot's
+     * activity is cancelled or times out, the command and its child processes
+     * are killed.
      * 
      * @return the return code of the finished
      * @throws IOException if something goes wrong
@@ -91,6 +94,16 @@ public class CommandRobot implements Robot
      */
     public int runCommand() throws IOException, InterruptedException
     {
-        return this.processBuilder.start().waitFor();
+        var process = this.processBuilder.start();
+        try
+        {
+            return process.waitFor();
+        }
+        catch ( InterruptedException ie )
+        {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            throw ie;
+        }
     }
 }
\ No newline at end of file
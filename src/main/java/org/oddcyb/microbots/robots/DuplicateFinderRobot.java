@@ -0,0 +1,413 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.Robot;
+import org.oddcyb.microbots.RobotException;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+
+/**
+ * Robot that finds duplicate files.
+ * <p>
+ * Files are compared in stages, and each stage only looks at the files that
+ * might still have duplicates. Files are first grouped by size, which needs
+ * no reads, then by a hash of their first and last 4KB, and only the files
+ * that still match are hashed in full. Most files have a unique size or 
+ * differ at the ends, so most bytes are never read. Large files are hashed 
+ * through memory-mapped reads.
+ * <p>
+ * Hashing is done in parallel, with at most a fixed number of files read at
+ * once, so the walk does not swamp the disks. Empty files are ignored.
+ * <p>
+ * Paths that are hard links to the same file are only compared once, by
+ * the first path found, and are reported as hard links rather than as 
+ * duplicates.
+ */
+public class DuplicateFinderRobot implements Robot
+{
+    private static final Logger LOG =
+        Logger.getLogger(DuplicateFinderRobot.class.getName());
+
+    /**
+     * The number of bytes hashed at each end of a file.
+     */
+    static final int EDGE_SIZE = 4096;
+
+    /**
+     * The size from which files are hashed through memory-mapped reads.
+     */
+    static final long MAP_THRESHOLD = 1L << 20;
+
+    private static final long MAP_CHUNK = 1L << 28;
+    private static final int READ_SIZE = 1 << 16;
+    private static final String ALGORITHM = "SHA-256";
+
+    private final Set<Path> roots;
+    private final Consumer<List<Path>> onDuplicates;
+    private final int ioParallelism;
+    private FileMatcher matcher;
+    private Consumer<List<Path>> onHardLinks;
+
+    /**
+     * Create a new duplicate finder robot that reads 4 files at once.
+     * 
+     * @param roots the filesystem roots to search
+     * @param onDuplicates called with each group of identical files
+     */
+    public DuplicateFinderRobot(Set<Path> roots, 
+                                Consumer<List<Path>> onDuplicates)
+    {
+        this(roots, onDuplicates, 4);
+    }
+
+    /**
+     * Create a new duplicate finder robot.
+     * 
+     * @param roots the filesystem roots to search
+     * @param onDuplicates called with each group of identical files
+     * @param ioParallelism the maximum number of files read at once
+     */
+    public DuplicateFinderRobot(Set<Path> roots, 
+                                Consumer<List<Path>> onDuplicates,
+                                int ioParallelism)
+    {
+        if ( ioParallelism < 1 )
+        {
+            throw new IllegalArgumentException(
+                "I/O parallelism must be positive: "+ioParallelism);
+        }
+
+        this.roots = roots;
+        this.onDuplicates = onDuplicates;
+        this.ioParallelism = ioParallelism;
+        this.matcher = new FileMatcher();
+    }
+
+    /**
+     * Set the criteria for the files compared.
+     * 
+     * @param matcher the criteria, by default every file is compared
+     * @return this DuplicateFinderRobot
+     */
+    public DuplicateFinderRobot setMatcher(FileMatcher matcher)
+    {
+        this.matcher = matcher;
+        return this;
+    }
+
+    /**
+     * Set what to call with each group of paths that are hard links to the
+     * same file.
+     * 
+     * @param onHardLinks called with each group of hard links, by default 
+     * hard links are not reported
+     * @return this DuplicateFinderRobot
+     */
+    public DuplicateFinderRobot setOnHardLinks(
+        Consumer<List<Path>> onHardLinks)
+    {
+        this.onHardLinks = onHardLinks;
+        return this;
+    }
+
+    /**
+     * Find the duplicate files in the roots.
+     * The duplicates are reported once all the files have been compared.
+     * 
+     * @throws RobotException if the files could not be walked, or the robot
+     * was interrupted
+     */
+    @Override
+    public void activate() throws RobotException
+    {
+        LOG.log(Level.FINE, "Activating {0}", this);
+
+        ConcurrentMap<Long,Queue<Path>> bySize = new ConcurrentHashMap<>();
+        ConcurrentMap<Object,Queue<Path>> links = new ConcurrentHashMap<>();
+        new FileFinderRobot(this.roots, (file, attrs) -> {
+                if ( !attrs.isRegularFile() || attrs.size() == 0 )
+                {
+                    return;
+                }
+
+                // Only the first path to each file is compared
+                var key = attrs.fileKey();
+                if ( key != null )
+                {
+                    var paths = new ConcurrentLinkedQueue<Path>();
+                    paths.add(file);
+                    var existing = links.putIfAbsent(key, paths);
+                    if ( existing != null )
+                    {
+                        existing.add(file);
+                        return;
+                    }
+                }
+
+                bySize.computeIfAbsent(attrs.size(), 
+                    size -> new ConcurrentLinkedQueue<>()).add(file);
+            })
+            .setMatcher(this.matcher)
+            .activate();
+
+        if ( this.onHardLinks != null )
+        {
+            for ( var paths : links.values() )
+            {
+                if ( paths.size() > 1 )
+                {
+                    this.onHardLinks.accept(new ArrayList<>(paths));
+                }
+            }
+        }
+
+        var sized = new ArrayList<Group>();
+        bySize.forEach( (size, files) -> {
+            if ( files.size() > 1 )
+            {
+                sized.add(new Group(size, new ArrayList<>(files)));
+            }
+        });
+
+        var pool = Executors.newFixedThreadPool(this.ioParallelism, 
+                                                new RobotThreadFactory());
+        try
+        {
+            var groups = this.refine(sized, DuplicateFinderRobot::hashEdges,
+                                     pool);
+
+            // Files no bigger than both edges have already been read in full
+            var large = new ArrayList<Group>();
+            var duplicates = new ArrayList<Group>();
+            for ( var group : groups )
+            {
+                (group.size > 2 * EDGE_SIZE ? large : duplicates).add(group);
+            }
+            duplicates.addAll(
+                this.refine(large, DuplicateFinderRobot::hashAll, pool));
+
+            LOG.log(Level.INFO, "Found {0} groups of duplicates in {1}",
+                new Object[]{ duplicates.size(), this.roots });
+            for ( var group : duplicates )
+            {
+                this.onDuplicates.accept(group.files);
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new RobotException("Duplicate finder interrupted", ie);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Split groups of files by a hash of each file.
+     * 
+     * @param groups the groups to split
+     * @param hasher hashes a file
+     * @param pool the pool to hash on
+     * @return the groups of files with the same hash, that have more than 
+     * one file
+     * @throws InterruptedException if interrupted while hashing
+     */
+    private List<Group> refine(List<Group> groups, Hasher hasher, 
+                               ExecutorService pool)
+        throws InterruptedException
+    {
+        var tasks = new ArrayList<Callable<ByteBuffer>>();
+        for ( var group : groups )
+        {
+            for ( var file : group.files )
+            {
+                tasks.add( () -> hasher.hash(file, group.size) );
+            }
+        }
+
+        var hashes = pool.invokeAll(tasks);
+
+        var refined = new ArrayList<Group>();
+        var next = hashes.iterator();
+        for ( var group : groups )
+        {
+            var byHash = new HashMap<ByteBuffer,List<Path>>();
+            for ( var file : group.files )
+            {
+                try
+                {
+                    byHash.computeIfAbsent(next.next().get(), 
+                        hash -> new ArrayList<>()).add(file);
+                }
+                catch ( ExecutionException e )
+                {
+                    LOG.log(Level.WARNING, "Failed to hash {0} : {1}",
+                        new Object[]{ file, e.getCause() });
+                }
+            }
+
+            for ( var files : byHash.values() )
+            {
+                if ( files.size() > 1 )
+                {
+                    refined.add(new Group(group.size, files));
+                }
+            }
+        }
+        return refined;
+    }
+
+    /**
+     * Hash the first and last EDGE_SIZE bytes of a file, or the whole file
+     * if it is no bigger than that.
+     */
+    private static ByteBuffer hashEdges(Path file, long size) 
+        throws IOException
+    {
+        var digest = newDigest();
+        var buffer = ByteBuffer.allocate(EDGE_SIZE);
+        try ( var channel = FileChannel.open(file, StandardOpenOption.READ) )
+        {
+            read(channel, 0, buffer, digest);
+            if ( size > EDGE_SIZE )
+            {
+                read(channel, Math.max(EDGE_SIZE, size - EDGE_SIZE), buffer, 
+                     digest);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * Hash the whole of a file.
+     */
+    private static ByteBuffer hashAll(Path file, long size) 
+        throws IOException
+    {
+        var digest = newDigest();
+        try ( var channel = FileChannel.open(file, StandardOpenOption.READ) )
+        {
+            if ( size >= MAP_THRESHOLD )
+            {
+                // Hash in chunks, a single mapping is limited to 2GB
+                for ( long position = 0 ; position < size ; 
+                      position += MAP_CHUNK )
+                {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(MAP_CHUNK, size - position)));
+                }
+            }
+            else
+            {
+                var buffer = ByteBuffer.allocate(READ_SIZE);
+                while ( read(channel, -1, buffer, digest) > 0 )
+                {
+                    // Until the end of the file
+                }
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * Read a buffer's worth of a file into a digest.
+     * 
+     * @param position the position to read from, or -1 for the channel's
+     * @return the number of bytes read, 0 at the end of the file
+     */
+    private static int read(FileChannel channel, long position, 
+                            ByteBuffer buffer, MessageDigest digest) 
+        throws IOException
+    {
+        buffer.clear();
+        var read = 0;
+        while ( buffer.hasRemaining() )
+        {
+            var n = (position < 0) ? 
+                channel.read(buffer) : channel.read(buffer, position + read);
+            if ( n < 0 )
+            {
+                break;
+            }
+            read += n;
+        }
+
+        buffer.flip();
+        digest.update(buffer);
+        return read;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Hashes a file.
+     */
+    private interface Hasher
+    {
+        ByteBuffer hash(Path file, long size) throws IOException;
+    }
+
+    /**
+     * Files of the same size that might be duplicates.
+     */
+    private static class Group
+    {
+        private final long size;
+        private final List<Path> files;
+
+        Group(long size, List<Path> files)
+        {
+            this.size = size;
+            this.files = files;
+        }
+    }
+}
@@ -16,34 +16,76 @@
 package org.oddcyb.microbots.robots;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.oddcyb.microbots.Robot;
 import org.oddcyb.microbots.RobotException;
 
 /**
  * Robot that can find files.
+ * <p>
+ * The roots are walked on a fork/join pool, with a task for each directory,
+ * so idle threads steal subdirectories from busy ones and a single large 
+ * root is walked in parallel. The file callback is called concurrently from
+ * the pool's threads. Symbolic links are not followed unless enabled, and
+ * a followed link to one of its own ancestors is skipped rather than walked 
+ * forever. A FileMatcher limits the files found, and is applied during the
+ * walk so excluded subtrees are never read.
+ * <p>
+ * Found files can also be pulled from a Flow.Publisher or a Stream, which 
+ * walk the roots in a single thread only as fast as files are consumed.
  */
 public class FileFinderRobot extends SimpleFileVisitor<Path> implements Robot
 {
     private static final Logger LOG =
         Logger.getLogger(FileFinderRobot.class.getName());
 
+    private static final LinkOption[] NO_FOLLOW = 
+        { LinkOption.NOFOLLOW_LINKS };
+    private static final LinkOption[] FOLLOW = {};
+
     private final Set<Path> roots;
     private final BiConsumer<Path,BasicFileAttributes> onFile;
+    private final int parallelism;
+    private boolean followLinks;
+    private FileMatcher matcher;
     
     /**
-     * Create a new file finder robot.
+     * Create a new file finder robot for publishing or streaming files.
+     * 
+     * @param roots the filesystem roots to search
+     * @see #publisher(Executor)
+     * @see #stream()
+     */
+    public FileFinderRobot(Set<Path> roots)
+    {
+        this(roots, (file, attrs) -> {});
+    }
+
+    /**
+     * Create a new file finder robot that walks with a thread per processor.
      * 
      * @param roots the filesystem roots to search
      * @param onFile called when a file is found
@@ -51,75 +93,328 @@ public class FileFinderRobot extends SimpleFileVisitor<Path> implements Robot
     public FileFinderRobot(Set<Path> roots, 
             BiConsumer<Path,BasicFileAttributes> onFile)
     {
+        this(roots, onFile, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Create a new file finder robot.
+     * 
+     * @param roots the filesystem roots to search
+     * @param onFile called when a file is found
+     * @param parallelism the number of threads to walk the roots with
+     */
+    public FileFinderRobot(Set<Path> roots, 
+            BiConsumer<Path,BasicFileAttributes> onFile, int parallelism)
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException(
+                "Parallelism must be positive: "+parallelism);
+        }
+
         this.roots = roots;
         this.onFile = onFile;
+        this.parallelism = parallelism;
+        this.matcher = new FileMatcher();
+    }
+
+    /**
+     * Set whether symbolic links are followed.
+     * 
+     * @param followLinks true to walk the targets of links, false to report
+     * links as files
+     * @return this FileFinderRobot
+     */
+    public FileFinderRobot setFollowLinks(boolean followLinks)
+    {
+        this.followLinks = followLinks;
+        return this;
+    }
+
+    /**
+     * Set the criteria for the files found.
+     * 
+     * @param matcher the criteria, by default every file is found
+     * @return this FileFinderRobot
+     */
+    public FileFinderRobot setMatcher(FileMatcher matcher)
+    {
+        this.matcher = matcher;
+        return this;
     }
     
+    /**
+     * Get a publisher of the files in the roots.
+     * Each subscriber gets its own walk of the roots, which only reads
+     * directories as the subscriber requests files and pauses when it 
+     * stops requesting them. The callback is not called.
+     * 
+     * @param executor the executor to walk and signal subscribers on
+     * @return the publisher
+     */
+    public Flow.Publisher<FoundFile> publisher(Executor executor)
+    {
+        return new FilePublisher(List.copyOf(this.roots), this.followLinks, 
+                                 this.matcher, executor);
+    }
+
+    /**
+     * Get a lazy stream of the files in the roots.
+     * Directories are read as the stream is consumed, and the stream must be
+     * closed to close the directories if it is not consumed to the end. The
+     * callback is not called.
+     * 
+     * @return the stream
+     */
+    public Stream<FoundFile> stream()
+    {
+        var cursor = new FileTreeCursor(List.copyOf(this.roots), 
+                                        this.followLinks, this.matcher);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, 
+                    Spliterator.ORDERED | Spliterator.NONNULL), 
+                false)
+            .onClose(cursor::close);
+    }
+
+    /**
+     * Find the files in the roots.
+     * This waits until every root has been walked. If the waiting thread is
+     * interrupted, such as when the robot is cancelled, the walk is stopped.
+     * 
+     * @throws RobotException if the walk failed or was interrupted
+     */
     @Override
     public void activate() throws RobotException
     {
         LOG.log(Level.FINE, "Activating {0}", this);
-        var executor = Executors.newFixedThreadPool(4);
+        var pool = new ForkJoinPool(this.parallelism);
 
         try
         {
-            roots.forEach((root) -> {
-                executor.submit( () -> {
-                    try
-                    {
-
-                        Files.walkFileTree(root, this);
-                    }
-                    catch ( IOException ioe )
-                    {
-                        LOG.log(Level.WARNING, "Failed to walk {0} : {1}",
-                            new Object[]{ root, ioe });
-                    }
-                });
+            var tasks = new ArrayList<ForkJoinTask<?>>();
+            this.roots.forEach( (root) -> {
+                tasks.add(pool.submit(new WalkTask(root, null, null, 0)));
             });
+
+            for ( var task : tasks )
+            {
+                task.get();
+            }
         }
-        catch ( Exception e )
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new RobotException("File finder interrupted", ie);
+        }
+        catch ( ExecutionException e )
         {
             LOG.log(Level.WARNING, "Failed to find file {0} : {1}", 
-                new Object[]{ this.roots, e });
-            throw new RobotException("Error in file finder", e);
+                new Object[]{ this.roots, e.getCause() });
+            throw new RobotException("Error in file finder", e.getCause());
         }
         finally
         {
-            executor.shutdown();
-
-            try
-            {
-                executor.awaitTermination(10, TimeUnit.MINUTES);
-            }
-            catch ( InterruptedException ie )
-            {
-                // Failed to wait for termination, terminal now
-                executor.shutdownNow();
-            }
+            pool.shutdownNow();
         }
         
         LOG.log(Level.INFO, "Completed {0}", this);
     }
     
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, 
+                                             BasicFileAttributes attrs)
+    {
+        return this.matcher.excludes(dir) ? 
+            FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
     {
-        if ( Files.isDirectory(file) )
+        // Directories are only visited as files beyond a walk's max depth
+        if ( !attrs.isDirectory() && !this.matcher.excludes(file) &&
+             this.matcher.matches(file, attrs) )
         {
-            try
+            this.onFile.accept(file, attrs);
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Read the attributes of a path.
+     * 
+     * @param path the path
+     * @param followLinks true to read the target of a link, the link itself
+     * is read if the target cannot be
+     * @return the attributes
+     * @throws IOException if the attributes cannot be read
+     */
+    static BasicFileAttributes readAttributes(Path path, boolean followLinks) 
+        throws IOException
+    {
+        if ( !followLinks )
+        {
+            return Files.readAttributes(path, BasicFileAttributes.class, 
+                                        NO_FOLLOW);
+        }
+
+        try
+        {
+            return Files.readAttributes(path, BasicFileAttributes.class, 
+                                        FOLLOW);
+        }
+        catch ( IOException ioe )
+        {
+            // A broken link, report the link itself
+            return Files.readAttributes(path, BasicFileAttributes.class, 
+                                        NO_FOLLOW);
+        }
+    }
+
+    /**
+     * Walks a directory, forking a task for each of its subdirectories.
+     */
+    private class WalkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final Ancestor ancestors;
+        private final int depth;
+
+        /**
+         * Create a walk task.
+         * 
+         * @param path the path to walk
+         * @param attrs the path's attributes, or null to read them
+         * @param ancestors the directories above the path, or null for a root
+         * @param depth the depth of the path, where 0 is a root
+         */
+        WalkTask(Path path, BasicFileAttributes attrs, Ancestor ancestors,
+                 int depth)
+        {
+            this.path = path;
+            this.attrs = attrs;
+            this.ancestors = ancestors;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute()
+        {
+            var current = this.attrs;
+            if ( current == null )
+            {
+                try
+                {
+                    current = readAttributes(this.path, followLinks);
+                }
+                catch ( IOException ioe )
+                {
+                    LOG.log(Level.WARNING, "Failed to walk {0} : {1}",
+                        new Object[]{ this.path, ioe });
+                    return;
+                }
+            }
+
+            if ( !current.isDirectory() )
+            {
+                visitFile(this.path, current);
+                return;
+            }
+
+            if ( !matcher.walks(this.depth) )
+            {
+                return;
+            }
+
+            var key = current.fileKey();
+            if ( followLinks && this.ancestors != null && 
+                 this.ancestors.contains(key) )
             {
-                // Check we can list files in the directory
-                Files.list(file);
+                LOG.log(Level.WARNING, "Skipping symbolic link loop at {0}",
+                        this.path);
+                return;
             }
-            catch ( IOException ioe )
+
+            var self = new Ancestor(key, this.ancestors);
+            var subdirectories = new ArrayList<WalkTask>();
+            try ( var entries = Files.newDirectoryStream(this.path) )
+            {
+                for ( var entry : entries )
+                {
+                    if ( matcher.skips(entry, this.depth+1) )
+                    {
+                        continue;
+                    }
+
+                    BasicFileAttributes entryAttrs;
+                    try
+                    {
+                        entryAttrs = readAttributes(entry, followLinks);
+                    }
+                    catch ( IOException ioe )
+                    {
+                        LOG.log(Level.WARNING, "Failed to read {0} : {1}",
+                            new Object[]{ entry, ioe });
+                        continue;
+                    }
+
+                    if ( entryAttrs.isDirectory() )
+                    {
+                        subdirectories.add(
+                            new WalkTask(entry, entryAttrs, self, this.depth+1));
+                    }
+                    else
+                    {
+                        visitFile(entry, entryAttrs);
+                    }
+                }
+            }
+            catch ( IOException | DirectoryIteratorException e )
             {
                 LOG.log(Level.WARNING, "Failed to list files in {0} : {1}",
-                    new Object[]{ file, ioe });
-                return FileVisitResult.SKIP_SUBTREE;
+                    new Object[]{ this.path, e });
             }
+
+            // The directory is closed before walking its subdirectories, so
+            // open handles are bounded by the parallelism, not the depth
+            ForkJoinTask.invokeAll(subdirectories);
+        }
+    }
+
+    /**
+     * A directory above a walk task, used to detect symbolic link loops.
+     */
+    private static class Ancestor
+    {
+        private final Object key;
+        private final Ancestor parent;
+
+        Ancestor(Object key, Ancestor parent)
+        {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        boolean contains(Object key)
+        {
+            if ( key == null )
+            {
+                // The file system has no file keys, loops cannot be found
+                return false;
+            }
+
+            for ( var a = this ; a != null ; a = a.parent )
+            {
+                if ( key.equals(a.key) )
+                {
+                    return true;
+                }
+            }
+            return false;
         }
-        this.onFile.accept(file, attrs);
-        return FileVisitResult.CONTINUE;
     }
 }
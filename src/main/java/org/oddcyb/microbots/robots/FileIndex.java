@@ -0,0 +1,313 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An index of the files and directories found under some roots.
+ * <p>
+ * Each file has its size, modified time and file key, and each directory 
+ * has its modified time and the names of its entries. The index is saved as
+ * a compact binary file, which is replaced in one step so a crash cannot 
+ * leave it half written. An index that cannot be read is treated as empty.
+ * The index is not thread safe.
+ */
+class FileIndex
+{
+    private static final Logger LOG =
+        Logger.getLogger(FileIndex.class.getName());
+
+    private static final int MAGIC = 0x4D424649;
+    private static final int VERSION = 1;
+
+    private final Map<Path,Entry> entries;
+
+    /**
+     * Create an empty index.
+     */
+    FileIndex()
+    {
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * Load an index.
+     * 
+     * @param file the index file
+     * @return the loaded index, or an empty index if the file does not 
+     * exist or cannot be read
+     */
+    static FileIndex load(Path file)
+    {
+        var index = new FileIndex();
+        if ( !Files.exists(file) )
+        {
+            return index;
+        }
+
+        try ( var in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file))) )
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+            {
+                throw new IOException("Not a file index");
+            }
+
+            var count = in.readInt();
+            for ( int i=0 ; i<count ; i++ )
+            {
+                var path = Paths.get(in.readUTF());
+                var directory = in.readBoolean();
+                var size = in.readLong();
+                var modified = in.readLong();
+                var key = in.readBoolean() ? in.readUTF() : null;
+                List<String> names = null;
+                if ( directory )
+                {
+                    var nameCount = in.readInt();
+                    names = new ArrayList<>(nameCount);
+                    for ( int n=0 ; n<nameCount ; n++ )
+                    {
+                        names.add(in.readUTF());
+                    }
+                }
+                index.entries.put(path, 
+                    new Entry(directory, size, modified, key, names));
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.WARNING, "Unable to read index {0}, rescanning : {1}",
+                new Object[]{ file, ioe });
+            index.entries.clear();
+        }
+
+        return index;
+    }
+
+    /**
+     * Save the index.
+     * 
+     * @param file the index file
+     * @throws IOException if the index cannot be written
+     */
+    void save(Path file) throws IOException
+    {
+        var tmp = file.resolveSibling(file.getFileName()+".tmp");
+        try ( var out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp))) )
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.entries.size());
+            for ( var e : this.entries.entrySet() )
+            {
+                var entry = e.getValue();
+                out.writeUTF(e.getKey().toString());
+                out.writeBoolean(entry.directory);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeBoolean(entry.key != null);
+                if ( entry.key != null )
+                {
+                    out.writeUTF(entry.key);
+                }
+                if ( entry.directory )
+                {
+                    out.writeInt(entry.names.size());
+                    for ( var name : entry.names )
+                    {
+                        out.writeUTF(name);
+                    }
+                }
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the entry for a path.
+     * 
+     * @param path the path
+     * @return the entry, or null if the path is not indexed
+     */
+    Entry get(Path path)
+    {
+        return this.entries.get(path);
+    }
+
+    /**
+     * Index a path.
+     * 
+     * @param path the path
+     * @param entry the entry for the path
+     */
+    void put(Path path, Entry entry)
+    {
+        this.entries.put(path, entry);
+    }
+
+    /**
+     * Get the indexed directories.
+     * 
+     * @return the paths of the directories
+     */
+    List<Path> directories()
+    {
+        var directories = new ArrayList<Path>();
+        this.entries.forEach( (path, entry) -> {
+            if ( entry.directory )
+            {
+                directories.add(path);
+            }
+        });
+        return directories;
+    }
+
+    /**
+     * Remove a path and, if it is a directory, everything under it.
+     * 
+     * @param path the path to remove
+     * @param onFile called with each file removed
+     */
+    void removeTree(Path path, Consumer<Path> onFile)
+    {
+        var entry = this.entries.remove(path);
+        if ( entry == null )
+        {
+            return;
+        }
+
+        if ( !entry.directory )
+        {
+            onFile.accept(path);
+            return;
+        }
+
+        for ( var name : entry.names )
+        {
+            this.removeTree(path.resolve(name), onFile);
+        }
+    }
+
+    /**
+     * An indexed file or directory.
+     */
+    static class Entry
+    {
+        private final boolean directory;
+        private final long size;
+        private final long modified;
+        private final String key;
+        private final List<String> names;
+
+        private Entry(boolean directory, long size, long modified, 
+                      String key, List<String> names)
+        {
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+            this.names = names;
+        }
+
+        /**
+         * Create an entry for a file.
+         * 
+         * @param attrs the file's attributes
+         * @return the entry
+         */
+        static Entry file(BasicFileAttributes attrs)
+        {
+            return new Entry(false, attrs.size(), modified(attrs),
+                             Objects.toString(attrs.fileKey(), null), null);
+        }
+
+        /**
+         * Create an entry for a directory.
+         * 
+         * @param attrs the directory's attributes
+         * @param names the names of the directory's entries
+         * @return the entry
+         */
+        static Entry directory(BasicFileAttributes attrs, List<String> names)
+        {
+            return new Entry(true, 0, modified(attrs),
+                             Objects.toString(attrs.fileKey(), null), names);
+        }
+
+        /**
+         * Get the modified time of a file as indexed.
+         * 
+         * @param attrs the file's attributes
+         * @return the modified time in nanoseconds
+         */
+        static long modified(BasicFileAttributes attrs)
+        {
+            return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+
+        boolean isDirectory()
+        {
+            return this.directory;
+        }
+
+        long getModified()
+        {
+            return this.modified;
+        }
+
+        List<String> getNames()
+        {
+            return this.names;
+        }
+
+        /**
+         * Check if a file has changed since it was indexed.
+         * 
+         * @param other the entry for the file now
+         * @return true if the file's size, modified time or key changed
+         */
+        boolean changed(Entry other)
+        {
+            return this.directory != other.directory ||
+                   this.size != other.size ||
+                   this.modified != other.modified ||
+                   !Objects.equals(this.key, other.key);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria for the files a FileFinderRobot finds.
+ * <p>
+ * The criteria are applied while walking, so files that do not match are
+ * never passed on. Directories beyond the maximum depth are not opened, and
+ * entries with excluded names are skipped without being read at all, so an
+ * excluded directory is neither stat'd nor opened. An entry at the maximum
+ * depth whose name does not match is also skipped without being read.
+ * <p>
+ * Names are matched with the default file system's glob or regex syntax.
+ * A matcher can be shared by robots but should not be changed while they
+ * are walking.
+ */
+public class FileMatcher
+{
+    private PathMatcher name;
+    private final List<PathMatcher> excluded;
+    private long minSize;
+    private long maxSize;
+    private Instant modifiedAfter;
+    private Instant modifiedBefore;
+    private int maxDepth;
+
+    /**
+     * Create a file matcher that matches every file.
+     */
+    public FileMatcher()
+    {
+        this.excluded = new ArrayList<>();
+        this.minSize = 0;
+        this.maxSize = Long.MAX_VALUE;
+        this.maxDepth = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Match files whose names match a glob, e.g. "*.{log,txt}".
+     * 
+     * @param glob the glob
+     * @return this FileMatcher
+     */
+    public FileMatcher setNameGlob(String glob)
+    {
+        this.name = FileSystems.getDefault().getPathMatcher("glob:"+glob);
+        return this;
+    }
+
+    /**
+     * Match files whose names match a regular expression.
+     * 
+     * @param regex the regular expression, matching the whole name
+     * @return this FileMatcher
+     */
+    public FileMatcher setNameRegex(String regex)
+    {
+        this.name = FileSystems.getDefault().getPathMatcher("regex:"+regex);
+        return this;
+    }
+
+    /**
+     * Match files with sizes in a range.
+     * 
+     * @param minSize the minimum size in bytes, inclusive
+     * @param maxSize the maximum size in bytes, inclusive
+     * @return this FileMatcher
+     */
+    public FileMatcher setSizeRange(long minSize, long maxSize)
+    {
+        if ( minSize < 0 || maxSize < minSize )
+        {
+            throw new IllegalArgumentException(
+                "Invalid size range "+minSize+" to "+maxSize);
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Match files last modified in a range.
+     * 
+     * @param after the earliest modified time, inclusive, or null
+     * @param before the latest modified time, exclusive, or null
+     * @return this FileMatcher
+     */
+    public FileMatcher setModifiedRange(Instant after, Instant before)
+    {
+        this.modifiedAfter = after;
+        this.modifiedBefore = before;
+        return this;
+    }
+
+    /**
+     * Limit how deep the walk goes below each root.
+     * When the robot is used as a visitor with Files.walkFileTree, the 
+     * walk's own max depth applies instead.
+     * 
+     * @param maxDepth the maximum depth, where 1 is the entries of a root
+     * @return this FileMatcher
+     */
+    public FileMatcher setMaxDepth(int maxDepth)
+    {
+        if ( maxDepth < 0 )
+        {
+            throw new IllegalArgumentException(
+                "Max depth must not be negative: "+maxDepth);
+        }
+
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Skip entries whose names match a glob, e.g. ".git" or "node_modules".
+     * Skipped entries are not read, so files with matching names are also
+     * skipped.
+     * 
+     * @param glob the glob
+     * @return this FileMatcher
+     */
+    public FileMatcher addExcludedGlob(String glob)
+    {
+        this.excluded.add(
+            FileSystems.getDefault().getPathMatcher("glob:"+glob));
+        return this;
+    }
+
+    /**
+     * Check if an entry can be skipped without reading its attributes.
+     * 
+     * @param path the entry
+     * @param depth the depth of the entry, where 1 is the entries of a root
+     * @return true to skip the entry
+     */
+    boolean skips(Path path, int depth)
+    {
+        var fileName = path.getFileName();
+        if ( fileName == null )
+        {
+            return false;
+        }
+
+        // An entry at the maximum depth is only wanted if it is a matching 
+        // file, as a directory there is not walked
+        return this.excludes(path) ||
+               ( depth >= this.maxDepth && !this.matchesName(fileName) );
+    }
+
+    /**
+     * Check if an entry's name is excluded.
+     * 
+     * @param path the entry
+     * @return true if the entry is excluded
+     */
+    boolean excludes(Path path)
+    {
+        var fileName = path.getFileName();
+        if ( fileName == null )
+        {
+            return false;
+        }
+
+        for ( var matcher : this.excluded )
+        {
+            if ( matcher.matches(fileName) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a directory should be walked.
+     * 
+     * @param depth the depth of the directory, where 0 is a root
+     * @return true to read the directory's entries
+     */
+    boolean walks(int depth)
+    {
+        return depth < this.maxDepth;
+    }
+
+    /**
+     * Check if a file matches.
+     * 
+     * @param path the file
+     * @param attrs the file's attributes
+     * @return true if the file matches
+     */
+    boolean matches(Path path, BasicFileAttributes attrs)
+    {
+        var fileName = path.getFileName();
+        if ( fileName != null && !this.matchesName(fileName) )
+        {
+            return false;
+        }
+
+        var size = attrs.size();
+        if ( size < this.minSize || size > this.maxSize )
+        {
+            return false;
+        }
+
+        if ( this.modifiedAfter == null && this.modifiedBefore == null )
+        {
+            return true;
+        }
+
+        var modified = attrs.lastModifiedTime().toInstant();
+        return ( this.modifiedAfter == null || 
+                 !modified.isBefore(this.modifiedAfter) ) &&
+               ( this.modifiedBefore == null || 
+                 modified.isBefore(this.modifiedBefore) );
+    }
+
+    private boolean matchesName(Path fileName)
+    {
+        return this.name == null || this.name.matches(fileName);
+    }
+}
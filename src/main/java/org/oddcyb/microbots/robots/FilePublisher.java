@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the files under some roots as they are requested.
+ * <p>
+ * Each subscriber gets its own walk, which is advanced on the executor only
+ * while the subscriber has outstanding demand. When demand runs out the walk
+ * pauses with its directories open, so memory stays bounded however large
+ * the tree.
+ * <p>
+ * A subscriber that throws from onNext is treated as having cancelled its
+ * subscription, as the Reactive Streams rules require, and is not sent 
+ * onError.
+ */
+class FilePublisher implements Flow.Publisher<FoundFile>
+{
+    private static final Logger LOG =
+        Logger.getLogger(FilePublisher.class.getName());
+
+    private final List<Path> roots;
+    private final boolean followLinks;
+    private final FileMatcher matcher;
+    private final Executor executor;
+
+    /**
+     * Create a file publisher.
+     * 
+     * @param roots the roots to walk
+     * @param followLinks true to follow symbolic links
+     * @param matcher the criteria for the files published
+     * @param executor the executor to walk and signal subscribers on
+     */
+    FilePublisher(List<Path> roots, boolean followLinks, FileMatcher matcher,
+                  Executor executor)
+    {
+        this.roots = roots;
+        this.followLinks = followLinks;
+        this.matcher = matcher;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super FoundFile> subscriber)
+    {
+        var subscription = new WalkSubscription(subscriber, 
+            new FileTreeCursor(this.roots, this.followLinks, this.matcher));
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * A subscriber's walk.
+     */
+    private class WalkSubscription implements Flow.Subscription, Runnable
+    {
+        private final Flow.Subscriber<? super FoundFile> subscriber;
+        private final FileTreeCursor cursor;
+        private final AtomicLong demand;
+        private final AtomicInteger work;
+        private volatile boolean done;
+        private volatile Throwable invalid;
+
+        WalkSubscription(Flow.Subscriber<? super FoundFile> subscriber,
+                         FileTreeCursor cursor)
+        {
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+            this.demand = new AtomicLong(0);
+            this.work = new AtomicInteger(0);
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if ( n <= 0 )
+            {
+                this.invalid = new IllegalArgumentException(
+                    "Requested "+n+" files, must be positive");
+            }
+            else
+            {
+                this.demand.accumulateAndGet(n, (current, more) -> 
+                    (current + more < 0) ? Long.MAX_VALUE : current + more);
+            }
+            this.schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            this.done = true;
+            this.schedule();
+        }
+
+        private void schedule()
+        {
+            if ( this.work.getAndIncrement() == 0 )
+            {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Walk while there is demand, only one thread runs this at a time.
+         */
+        @Override
+        public void run()
+        {
+            var missed = 1;
+            do
+            {
+                this.emit();
+                missed = this.work.addAndGet(-missed);
+            }
+            while ( missed != 0 );
+        }
+
+        private void emit()
+        {
+            try
+            {
+                while ( !this.done )
+                {
+                    if ( this.invalid != null )
+                    {
+                        this.finish(this.invalid);
+                        return;
+                    }
+
+                    if ( this.demand.get() == 0 )
+                    {
+                        return;
+                    }
+
+                    if ( !this.cursor.hasNext() )
+                    {
+                        this.finish(null);
+                        return;
+                    }
+
+                    var file = this.cursor.next();
+                    try
+                    {
+                        this.subscriber.onNext(file);
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        LOG.log(Level.WARNING, 
+                            "Cancelled subscriber {0} that failed : {1}",
+                            new Object[]{ this.subscriber, e });
+                        this.done = true;
+                    }
+                    this.demand.decrementAndGet();
+                }
+
+                // Cancelled
+                this.cursor.close();
+            }
+            catch ( RuntimeException e )
+            {
+                this.finish(e);
+            }
+        }
+
+        private void finish(Throwable error)
+        {
+            if ( this.done )
+            {
+                return;
+            }
+
+            this.done = true;
+            this.cursor.close();
+            if ( error == null )
+            {
+                this.subscriber.onComplete();
+            }
+            else
+            {
+                this.subscriber.onError(error);
+            }
+        }
+    }
+}
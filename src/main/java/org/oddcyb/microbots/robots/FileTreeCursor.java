@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks the files under some roots one at a time, depth first.
+ * <p>
+ * The cursor only reads as far as the next file, so a walk that is not
+ * advanced does no I/O, and it holds one open directory for each level of
+ * the current path. Directories that cannot be read are logged and skipped,
+ * as are symbolic link loops when links are followed. Entries the matcher
+ * skips are not read, and files it does not match are passed over. A cursor
+ * is not thread safe and must be closed if it is not walked to the end.
+ */
+class FileTreeCursor implements Iterator<FoundFile>, Closeable
+{
+    private static final Logger LOG =
+        Logger.getLogger(FileTreeCursor.class.getName());
+
+    private final Iterator<Path> roots;
+    private final boolean followLinks;
+    private final FileMatcher matcher;
+    private final Deque<OpenDirectory> directories;
+    private FoundFile next;
+
+    /**
+     * Create a cursor.
+     * 
+     * @param roots the roots to walk
+     * @param followLinks true to follow symbolic links
+     * @param matcher the criteria for the files found
+     */
+    FileTreeCursor(Iterable<Path> roots, boolean followLinks, 
+                   FileMatcher matcher)
+    {
+        this.roots = roots.iterator();
+        this.followLinks = followLinks;
+        this.matcher = matcher;
+        this.directories = new ArrayDeque<>();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if ( this.next == null )
+        {
+            this.next = this.advance();
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public FoundFile next()
+    {
+        if ( !this.hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        var found = this.next;
+        this.next = null;
+        return found;
+    }
+
+    /**
+     * Close the open directories.
+     */
+    @Override
+    public void close()
+    {
+        while ( !this.directories.isEmpty() )
+        {
+            this.directories.pop().close();
+        }
+    }
+
+    private FoundFile advance()
+    {
+        while ( true )
+        {
+            Path path;
+            var depth = this.directories.size();
+            if ( this.directories.isEmpty() )
+            {
+                if ( !this.roots.hasNext() )
+                {
+                    return null;
+                }
+                path = this.roots.next();
+            }
+            else
+            {
+                var open = this.directories.peek();
+                try
+                {
+                    if ( !open.entries.hasNext() )
+                    {
+                        this.directories.pop().close();
+                        continue;
+                    }
+                    path = open.entries.next();
+                    if ( this.matcher.skips(path, depth) )
+                    {
+                        continue;
+                    }
+                }
+                catch ( DirectoryIteratorException die )
+                {
+                    LOG.log(Level.WARNING, "Failed to list files in {0} : {1}",
+                        new Object[]{ open.directory, die });
+                    this.directories.pop().close();
+                    continue;
+                }
+            }
+
+            BasicFileAttributes attrs;
+            try
+            {
+                attrs = FileFinderRobot.readAttributes(path, this.followLinks);
+            }
+            catch ( IOException ioe )
+            {
+                LOG.log(Level.WARNING, "Failed to read {0} : {1}",
+                    new Object[]{ path, ioe });
+                continue;
+            }
+
+            if ( !attrs.isDirectory() )
+            {
+                if ( this.matcher.matches(path, attrs) )
+                {
+                    return new FoundFile(path, attrs);
+                }
+            }
+            else if ( this.matcher.walks(depth) )
+            {
+                this.enter(path, attrs.fileKey());
+            }
+        }
+    }
+
+    private void enter(Path directory, Object key)
+    {
+        if ( this.followLinks && key != null )
+        {
+            for ( var open : this.directories )
+            {
+                if ( key.equals(open.key) )
+                {
+                    LOG.log(Level.WARNING, 
+                            "Skipping symbolic link loop at {0}", directory);
+                    return;
+                }
+            }
+        }
+
+        try
+        {
+            var entries = Files.newDirectoryStream(directory);
+            this.directories.push(new OpenDirectory(directory, key, entries));
+        }
+        catch ( IOException ioe )
+        {
+            LOG.log(Level.WARNING, "Failed to list files in {0} : {1}",
+                new Object[]{ directory, ioe });
+        }
+    }
+
+    /**
+     * A directory open in the walk.
+     */
+    private static class OpenDirectory
+    {
+        private final Path directory;
+        private final Object key;
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> entries;
+
+        OpenDirectory(Path directory, Object key, DirectoryStream<Path> stream)
+        {
+            this.directory = directory;
+            this.key = key;
+            this.stream = stream;
+            this.entries = stream.iterator();
+        }
+
+        void close()
+        {
+            try
+            {
+                this.stream.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.log(Level.FINE, "Failed to close {0}", this.directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file found by a FileFinderRobot.
+ */
+public class FoundFile
+{
+    private final Path path;
+    private final BasicFileAttributes attributes;
+
+    /**
+     * Create a found file.
+     * 
+     * @param path the path of the file
+     * @param attributes the attributes of the file
+     */
+    public FoundFile(Path path, BasicFileAttributes attributes)
+    {
+        this.path = path;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Get the path of the file.
+     * 
+     * @return the path
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * Get the attributes of the file, as read when it was found.
+     * 
+     * @return the attributes
+     */
+    public BasicFileAttributes getAttributes()
+    {
+        return this.attributes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.path.toString();
+    }
+}
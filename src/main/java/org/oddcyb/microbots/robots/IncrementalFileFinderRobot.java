@@ -0,0 +1,475 @@
+/*
+ * Copyright 2019 Matt Dean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.oddcyb.microbots.robots;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.oddcyb.microbots.Robot;
+import org.oddcyb.microbots.RobotException;
+import org.oddcyb.microbots.core.util.RobotThreadFactory;
+import org.oddcyb.microbots.robots.FileIndex.Entry;
+
+/**
+ * Robot that finds the files that changed under some roots since it last
+ * looked.
+ * <p>
+ * The files found are kept in an index file, and each activation reports
+ * only the files added, modified or deleted since the last one. A directory
+ * whose modified time has not changed still has the same entries, so it is
+ * not listed again, though its files are still checked for modification.
+ * Directories modified just before a scan are always listed, as a change in
+ * the same clock tick would not change their modified time.
+ * <p>
+ * When watching, a WatchService reports changed directories as they happen
+ * and only those directories are scanned, so the cost of keeping the index
+ * current depends on how much changes rather than on the size of the tree.
+ * Changes found while watching are reported from the watching thread.
+ * Symbolic links are not followed.
+ */
+public class IncrementalFileFinderRobot implements Robot
+{
+    private static final Logger LOG =
+        Logger.getLogger(IncrementalFileFinderRobot.class.getName());
+
+    private static final LinkOption[] NO_FOLLOW = 
+        { LinkOption.NOFOLLOW_LINKS };
+
+    /**
+     * How recently a directory can be modified and still be trusted.
+     */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * How long to collect watch events before scanning.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private static final RobotThreadFactory WATCHER_THREADS =
+        new RobotThreadFactory();
+
+    private final List<Path> roots;
+    private final Path indexFile;
+    private final BiConsumer<FileChange,Path> onChange;
+    private final Set<Path> dirty;
+    private final Set<Path> watchedDirectories;
+    private FileIndex index;
+    private WatchService watcher;
+    private boolean rescan;
+
+    /**
+     * Create a new incremental file finder robot.
+     * 
+     * @param roots the filesystem roots to search
+     * @param indexFile the file to keep the index of found files in
+     * @param onChange called with each file that changed
+     */
+    public IncrementalFileFinderRobot(Set<Path> roots, Path indexFile,
+                                      BiConsumer<FileChange,Path> onChange)
+    {
+        this.roots = List.copyOf(roots);
+        this.indexFile = indexFile;
+        this.onChange = onChange;
+        this.dirty = new LinkedHashSet<>();
+        this.watchedDirectories = new HashSet<>();
+    }
+
+    /**
+     * Report the files that changed since the last activation and save the
+     * index. When watching, only the directories changed since the last 
+     * scan are scanned.
+     * 
+     * @throws RobotException if the index cannot be saved
+     */
+    @Override
+    public synchronized void activate() throws RobotException
+    {
+        this.loadIndex();
+        if ( this.watcher != null && !this.rescan )
+        {
+            this.scanDirty();
+        }
+        else
+        {
+            this.scanAll();
+        }
+
+        try
+        {
+            this.index.save(this.indexFile);
+        }
+        catch ( IOException ioe )
+        {
+            throw new RobotException("Unable to save index", ioe);
+        }
+    }
+
+    /**
+     * Start watching the indexed directories for changes.
+     * 
+     * @throws IOException if the directories cannot be watched
+     */
+    public synchronized void startWatching() throws IOException
+    {
+        if ( this.watcher != null || this.roots.isEmpty() )
+        {
+            return;
+        }
+
+        this.loadIndex();
+        this.watcher = this.roots.get(0).getFileSystem().newWatchService();
+        var directories = this.index.directories();
+        this.rescan = directories.isEmpty();
+        for ( var directory : directories )
+        {
+            this.watch(directory);
+        }
+
+        var service = this.watcher;
+        WATCHER_THREADS.newThread( () -> this.watch(service) ).start();
+    }
+
+    /**
+     * Stop watching for changes and save the index.
+     * 
+     * @throws IOException if the index cannot be saved
+     */
+    public synchronized void stopWatching() throws IOException
+    {
+        if ( this.watcher == null )
+        {
+            return;
+        }
+
+        this.watcher.close();
+        this.watcher = null;
+        this.watchedDirectories.clear();
+        this.index.save(this.indexFile);
+    }
+
+    private void loadIndex()
+    {
+        if ( this.index == null )
+        {
+            this.index = FileIndex.load(this.indexFile);
+        }
+    }
+
+    private void scanAll()
+    {
+        this.rescan = false;
+        this.dirty.clear();
+
+        var start = now();
+        for ( var root : this.roots )
+        {
+            this.scan(root, true, start);
+        }
+    }
+
+    private void scanDirty()
+    {
+        var directories = new ArrayList<>(this.dirty);
+        this.dirty.clear();
+
+        var start = now();
+        for ( var directory : directories )
+        {
+            // Directories removed from the index were deleted with a parent
+            if ( this.index.get(directory) != null )
+            {
+                this.scan(directory, false, start);
+            }
+        }
+    }
+
+    /**
+     * Scan a path, updating the index and reporting changed files.
+     * 
+     * @param path the path to scan
+     * @param all true to scan indexed subdirectories, false to only scan 
+     * new subdirectories
+     * @param start the time the scan started, in nanoseconds since the epoch
+     */
+    private void scan(Path path, boolean all, long start)
+    {
+        BasicFileAttributes attrs;
+        try
+        {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                                         NO_FOLLOW);
+        }
+        catch ( IOException ioe )
+        {
+            this.index.removeTree(path, this::deleted);
+            return;
+        }
+
+        var old = this.index.get(path);
+        if ( old != null && old.isDirectory() != attrs.isDirectory() )
+        {
+            this.index.removeTree(path, this::deleted);
+            old = null;
+        }
+
+        if ( !attrs.isDirectory() )
+        {
+            var current = Entry.file(attrs);
+            this.index.put(path, current);
+            if ( old == null )
+            {
+                this.onChange.accept(FileChange.ADDED, path);
+            }
+            else if ( old.changed(current) )
+            {
+                this.onChange.accept(FileChange.MODIFIED, path);
+            }
+            return;
+        }
+
+        var modified = Entry.modified(attrs);
+        List<String> names;
+        if ( old != null && old.getModified() == modified && 
+             modified < start - RACY_NANOS )
+        {
+            names = old.getNames();
+        }
+        else
+        {
+            names = list(path);
+            if ( names == null )
+            {
+                return;
+            }
+        }
+
+        this.index.put(path, Entry.directory(attrs, names));
+        this.watch(path);
+
+        if ( old != null && names != old.getNames() )
+        {
+            var current = new HashSet<>(names);
+            for ( var name : old.getNames() )
+            {
+                if ( !current.contains(name) )
+                {
+                    this.index.removeTree(path.resolve(name), this::deleted);
+                }
+            }
+        }
+
+        for ( var name : names )
+        {
+            var child = path.resolve(name);
+            var childOld = this.index.get(child);
+            if ( childOld == null )
+            {
+                this.scan(child, true, start);
+            }
+            else if ( all || !childOld.isDirectory() )
+            {
+                this.scan(child, all, start);
+            }
+        }
+    }
+
+    private void deleted(Path file)
+    {
+        this.onChange.accept(FileChange.DELETED, file);
+    }
+
+    private void watch(Path directory)
+    {
+        if ( this.watcher == null || 
+             !this.watchedDirectories.add(directory) )
+        {
+            return;
+        }
+
+        try
+        {
+            directory.register(this.watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch ( IOException ioe )
+        {
+            // Changes will only be found by a full scan
+            LOG.log(Level.WARNING, "Unable to watch {0} : {1}",
+                new Object[]{ directory, ioe });
+            this.watchedDirectories.remove(directory);
+            this.rescan = true;
+        }
+    }
+
+    private void watch(WatchService service)
+    {
+        var stopped = false;
+        try
+        {
+            while ( true )
+            {
+                var key = service.take();
+
+                // Let a burst of changes arrive, to scan them together
+                Thread.sleep(SETTLE_MILLIS);
+
+                synchronized ( this )
+                {
+                    if ( this.watcher != service )
+                    {
+                        stopped = true;
+                        return;
+                    }
+
+                    for ( ; key != null ; key = service.poll() )
+                    {
+                        this.changed(key);
+                    }
+
+                    this.scanChanges();
+                }
+            }
+        }
+        catch ( ClosedWatchServiceException | InterruptedException e )
+        {
+            stopped = true;
+            LOG.log(Level.FINE, "Stopped watching {0}", this.roots);
+        }
+        finally
+        {
+            if ( !stopped )
+            {
+                this.watchFailed(service);
+            }
+        }
+    }
+
+    /**
+     * Scan the changes found by the watcher. A failed scan is logged and 
+     * the next scan is a full one, so the watcher keeps running.
+     */
+    private void scanChanges()
+    {
+        try
+        {
+            if ( this.rescan )
+            {
+                this.scanAll();
+            }
+            else
+            {
+                this.scanDirty();
+            }
+        }
+        catch ( RuntimeException re )
+        {
+            LOG.log(Level.WARNING, "Failed to scan changes in {0} : {1}",
+                new Object[]{ this.roots, re });
+            this.rescan = true;
+        }
+    }
+
+    /**
+     * Stop using a watcher whose thread failed, so the next activation 
+     * scans everything rather than waiting for changes nothing will report.
+     */
+    private synchronized void watchFailed(WatchService service)
+    {
+        LOG.log(Level.SEVERE, "Stopped watching {0} after a failure", 
+                this.roots);
+        if ( this.watcher == service )
+        {
+            this.watcher = null;
+            this.watchedDirectories.clear();
+            this.rescan = true;
+            try
+            {
+                service.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.log(Level.FINE, "Failed to close watcher : {0}", ioe);
+            }
+        }
+    }
+
+    private void changed(WatchKey key)
+    {
+        var directory = (Path) key.watchable();
+        for ( var event : key.pollEvents() )
+        {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
+            {
+                this.rescan = true;
+            }
+            else
+            {
+                this.dirty.add(directory);
+            }
+        }
+
+        // The key is no longer valid once the directory has been deleted
+        if ( !key.reset() )
+        {
+            this.watchedDirectories.remove(directory);
+            this.dirty.remove(directory);
+            this.index.removeTree(directory, this::deleted);
+        }
+    }
+
+    private static List<String> list(Path directory)
+    {
+        var names = new ArrayList<String>();
+        try ( var entries = Files.newDirectoryStream(directory) )
+        {
+            for ( var entry : entries )
+            {
+                names.add(entry.getFileName().toString());
+            }
+            return names;
+        }
+        catch ( IOException | DirectoryIteratorException e )
+        {
+            LOG.log(Level.WARNING, "Failed to list files in {0} : {1}",
+                new Object[]{ directory, e });
+            return null;
+        }
+    }
+
+    private static long now()
+    {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+}